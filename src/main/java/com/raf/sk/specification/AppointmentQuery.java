@@ -0,0 +1,288 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Search over free or reserved appointments of a schedule which combines any of its constraints.
+ * <p>
+ * Constraints are collected first and evaluated when the results are requested. The room and the dates narrow the
+ * appointments which are read from the schedule, visiting only the partitions of the room and the dates in range.
+ * If the schedule indexes data and a data constraint matches fewer appointments than those partitions hold, only the
+ * appointments under that data are read instead. Every constraint is then checked on the appointments which were
+ * read. Setting a constraint again replaces it, except for data, tokens and filters which are combined.
+ *
+ * @see Schedule#queryFreeAppointments()
+ * @see Schedule#queryReservedAppointments()
+ */
+public final class AppointmentQuery {
+
+    private final boolean free;
+    private final Supplier<Source> source;
+    private final DataTokenizer tokenizer;
+
+    private ScheduleRoom room;
+    private LocalDate date;
+    private LocalDate startDate, endDate;
+    private Day day;
+    private int startMinute = -1, endMinute = -1;
+    private final Map<String, Object> data = new LinkedHashMap<>();
+    private final Map<String, Set<String>> tokens = new LinkedHashMap<>();
+    private final Set<String> keys = new LinkedHashSet<>();
+    private final List<Predicate<Appointment>> filters = new ArrayList<>();
+
+    /**
+     * @param free - Whether the query is over free appointments
+     * @param source - Source of the appointments, asked once for every evaluation of the query
+     * @param tokenizer - Tokenizer of the data which token constraints are checked against
+     */
+    AppointmentQuery(boolean free, Supplier<Source> source, DataTokenizer tokenizer) {
+        this.free = free;
+        this.source = source;
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * @param room - Room of the appointments
+     * @return - This query
+     */
+    public AppointmentQuery room(ScheduleRoom room) {
+        this.room = room;
+        return this;
+    }
+
+    /**
+     * @param date - Date of a free appointment or the start date of a reserved one
+     * @return - This query
+     */
+    public AppointmentQuery date(LocalDate date) {
+        this.date = date;
+        return this;
+    }
+
+    /**
+     * Keeps appointments whose dates lie strictly between the given dates, both exclusive.
+     *
+     * @param startDate - Date before the first date of the range
+     * @param endDate - Date after the last date of the range
+     * @return - This query
+     */
+    public AppointmentQuery between(LocalDate startDate, LocalDate endDate) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        return this;
+    }
+
+    /**
+     * @param day - Day of the week of the appointments
+     * @return - This query
+     */
+    public AppointmentQuery day(Day day) {
+        this.day = day;
+        return this;
+    }
+
+    /**
+     * Keeps appointments which last during the whole time window.
+     *
+     * @param startTime - Start of the time window
+     * @param endTime - End of the time window
+     * @return - This query
+     */
+    public AppointmentQuery during(String startTime, String endTime) {
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = Time.toMinutes(endTime);
+        return this;
+    }
+
+    /**
+     * Keeps appointments which last for the given duration from the start time.
+     *
+     * @param startTime - Start of the time window
+     * @param duration - Length of the time window
+     * @return - This query
+     */
+    public AppointmentQuery lasting(String startTime, String duration) {
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = startMinute + Time.toMinutes(duration);
+        return this;
+    }
+
+    /**
+     * @param key - Key of the additional data
+     * @param value - Value of the additional data under the key
+     * @return - This query
+     */
+    public AppointmentQuery data(String key, Object value) {
+        data.put(key, value);
+        return this;
+    }
+
+    /**
+     * @param data - Keys and values of the additional data
+     * @return - This query
+     */
+    public AppointmentQuery data(Map<String, Object> data) {
+        this.data.putAll(data);
+        return this;
+    }
+
+    /**
+     * Keeps appointments whose additional data under the key contains the token, such as one group of the groups
+     * "101,102" when the key is tokenized. The whole value is the only token of a key which is not tokenized.
+     *
+     * @param key - Key of the additional data
+     * @param token - Token of the value under the key
+     * @return - This query
+     */
+    public AppointmentQuery token(String key, String token) {
+        tokens.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(token);
+        return this;
+    }
+
+    /**
+     * @param keys - Keys which the additional data must contain
+     * @return - This query
+     */
+    public AppointmentQuery keys(String ... keys) {
+        this.keys.addAll(Arrays.asList(keys));
+        return this;
+    }
+
+    /**
+     * @param predicate - Any other condition on the appointments
+     * @return - This query
+     */
+    public AppointmentQuery filter(Predicate<Appointment> predicate) {
+        filters.add(predicate);
+        return this;
+    }
+
+    /**
+     * @return - Appointments matching every constraint, in the order they were added to the schedule
+     */
+    public List<Appointment> list() {
+        return stream().collect(Collectors.toList());
+    }
+
+    public Stream<Appointment> stream() {
+        LocalDate from = null, to = null;
+        if (date != null) {
+            from = date;
+            to = date;
+        }
+        else if (endDate != null) {
+            // reserved appointments are partitioned by start date, free ones by their only date
+            to = endDate.minusDays(1);
+            if (free && startDate != null) from = startDate.plusDays(1);
+        }
+        Source current = source.get();
+        // the most selective data constraint is read from the data index when it beats the partitions
+        String bestKey = null;
+        Object bestTerm = null;
+        boolean bestToken = false;
+        int best = Integer.MAX_VALUE;
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            int count = current.countData(room, entry.getKey(), entry.getValue(), false);
+            if (count >= 0 && count < best) {
+                bestKey = entry.getKey();
+                bestTerm = entry.getValue();
+                bestToken = false;
+                best = count;
+            }
+        }
+        for (Map.Entry<String, Set<String>> entry : tokens.entrySet()) {
+            for (String token : entry.getValue()) {
+                int count = current.countData(room, entry.getKey(), token, true);
+                if (count >= 0 && count < best) {
+                    bestKey = entry.getKey();
+                    bestTerm = token;
+                    bestToken = true;
+                    best = count;
+                }
+            }
+        }
+        for (String key : keys) {
+            int count = current.countData(room, key, null, false);
+            if (count >= 0 && count < best) {
+                bestKey = key;
+                bestTerm = null;
+                bestToken = false;
+                best = count;
+            }
+        }
+        if (bestKey != null) {
+            int partitions = current.count(room, from, to);
+            if (partitions < 0 || best < partitions) return current.selectData(room, bestKey, bestTerm, bestToken).filter(this::matches);
+        }
+        return current.select(room, from, to).filter(this::matches);
+    }
+
+    private boolean matches(Appointment appointment) {
+        Time<LocalDate> time = appointment.getTime();
+        LocalDate first = free ? time.getDate() : time.getStartDate();
+        LocalDate last = free ? time.getDate() : time.getEndDate();
+        if (room != null && !appointment.getScheduleRoom().equals(room)) return false;
+        if (date != null && !first.equals(date)) return false;
+        if (endDate != null && !first.isBefore(endDate)) return false;
+        if (startDate != null && !last.isAfter(startDate)) return false;
+        if (day != null && !day.equals(time.getDay())) return false;
+        if (startMinute >= 0 && !(time.getStartMinute() <= startMinute && time.getEndMinute() >= endMinute)) return false;
+        Map<String, Object> appointmentData = appointment.getAllData();
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            if (!appointmentData.containsKey(entry.getKey()) || !Objects.equals(appointmentData.get(entry.getKey()), entry.getValue())) return false;
+        }
+        for (Map.Entry<String, Set<String>> entry : tokens.entrySet()) {
+            Object value = appointmentData.get(entry.getKey());
+            if (value == null || !tokenizer.tokens(entry.getKey(), value).containsAll(entry.getValue())) return false;
+        }
+        if (!appointmentData.keySet().containsAll(keys)) return false;
+        return filters.stream().allMatch(filter -> filter.test(appointment));
+    }
+
+    /**
+     * Reads appointments of one room, or of every room if the room is null, partitioned under dates between the
+     * given dates, both inclusive. A null date leaves the range open.
+     * <p>
+     * A source which indexes data also reads appointments of one room, or of every room, by the value of a data key
+     * or by one token of it. A null term reads every appointment with the key.
+     */
+    interface Source {
+        Stream<Appointment> select(ScheduleRoom room, LocalDate from, LocalDate to);
+
+        /**
+         * @return - Number of appointments the select would read, or -1 if unknown
+         */
+        default int count(ScheduleRoom room, LocalDate from, LocalDate to) {
+            return -1;
+        }
+
+        /**
+         * Reads appointments by data. A source which does not index data reads every appointment of the room with the
+         * key, and the value when the term is a whole value, leaving tokens to be matched by the caller.
+         */
+        default Stream<Appointment> selectData(ScheduleRoom room, String key, Object term, boolean token) {
+            return select(room, null, null).filter(appointment -> {
+                Map<String, Object> data = appointment.getAllData();
+                return data != null && data.containsKey(key) && (token || term == null || term.equals(data.get(key)));
+            });
+        }
+
+        /**
+         * @return - Number of appointments the data select would read, or -1 if the data is not indexed
+         */
+        default int countData(ScheduleRoom room, String key, Object term, boolean token) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,841 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * List of appointments partitioned by room and, within a room, by date.
+ * <p>
+ * Appointments keep the order in which they were added across all rooms and are grouped by a date taken from their
+ * time (the date of a free appointment, the start date of a reserved one), so date and date range lookups only visit
+ * the partitions they need. A room is only changed while holding its lock. Readers never see these working
+ * partitions: changed rooms are frozen and published as a new {@link View}, which shares every other room with the
+ * previous view.
+ * <p>
+ * A store may also index appointments of each room by their additional data, by the whole value under a key and by
+ * the tokens of values under tokenized keys, so data lookups only visit the appointments which carry the data.
+ */
+final class AppointmentStore {
+
+    private final Function<Time<LocalDate>, LocalDate> dateKey;
+    private final Map<String, Room> rooms = new ConcurrentHashMap<>();
+    private final Set<String> removedRooms = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile Supplier<List<Appointment>> pending;
+    private volatile DataTokenizer tokenizer;
+
+    /**
+     * @param dateKey - Date by which appointments are partitioned
+     */
+    public AppointmentStore(Function<Time<LocalDate>, LocalDate> dateKey) {
+        this(dateKey, null);
+    }
+
+    /**
+     * @param dateKey - Date by which appointments are partitioned
+     * @param tokenizer - Tokenizer of the indexed data, or null to not index data
+     */
+    public AppointmentStore(Function<Time<LocalDate>, LocalDate> dateKey, DataTokenizer tokenizer) {
+        this.dateKey = dateKey;
+        this.tokenizer = tokenizer;
+    }
+
+    public void add(Appointment appointment) {
+        materialize();
+        append(appointment);
+    }
+
+    private void append(Appointment appointment) {
+        rooms.computeIfAbsent(appointment.getScheduleRoom().getName(), name -> new Room())
+                .add(new Entry(sequence.getAndIncrement(), appointment));
+    }
+
+    /**
+     * Adds appointments of whole rooms, each list holding appointments of one room. Partitions of rooms which are not
+     * in this store yet are built on the common fork-join pool and merged into the store at the end, appointments of
+     * other rooms are added one by one. Appointments keep the order of the lists, room after room.
+     */
+    public void addRooms(List<List<Appointment>> appointmentsByRoom) {
+        materialize();
+        long[] firsts = new long[appointmentsByRoom.size()];
+        for (int i = 0; i < firsts.length; i++) firsts[i] = sequence.getAndAdd(appointmentsByRoom.get(i).size());
+
+        Room[] built = new Room[firsts.length];
+        IntStream.range(0, firsts.length).parallel().forEach(i -> {
+            List<Appointment> appointments = appointmentsByRoom.get(i);
+            if (appointments.isEmpty() || rooms.containsKey(nameOf(appointments))) return;
+            Room room = new Room();
+            for (int j = 0; j < appointments.size(); j++) room.add(new Entry(firsts[i] + j, appointments.get(j)));
+            built[i] = room;
+        });
+
+        for (int i = 0; i < firsts.length; i++) {
+            List<Appointment> appointments = appointmentsByRoom.get(i);
+            if (appointments.isEmpty()) continue;
+            if (built[i] != null && rooms.putIfAbsent(nameOf(appointments), built[i]) == null) continue;
+            Room room = rooms.computeIfAbsent(nameOf(appointments), name -> new Room());
+            for (int j = 0; j < appointments.size(); j++) room.add(new Entry(firsts[i] + j, appointments.get(j)));
+        }
+    }
+
+    private static String nameOf(List<Appointment> appointments) {
+        return appointments.get(0).getScheduleRoom().getName();
+    }
+
+    /**
+     * Removes an appointment equal to the given one.
+     *
+     * @return - Removed appointment of this store, which may be another object than the given one, or null
+     */
+    public Appointment remove(Appointment appointment) {
+        materialize();
+        Room room = rooms.get(appointment.getScheduleRoom().getName());
+        return (room == null) ? null : room.remove(appointment);
+    }
+
+    public boolean contains(Appointment appointment) {
+        materialize();
+        Room room = rooms.get(appointment.getScheduleRoom().getName());
+        return room != null && room.contains(appointment, false);
+    }
+
+    /**
+     * @return - Whether this very appointment, not only an equal one, is in this store
+     */
+    public boolean holds(Appointment appointment) {
+        materialize();
+        Room room = rooms.get(appointment.getScheduleRoom().getName());
+        return room != null && room.contains(appointment, true);
+    }
+
+    /**
+     * Replaces an appointment of this store with another one of the same room, keeping its position.
+     */
+    public void replace(Appointment appointment, Appointment replacement) {
+        materialize();
+        rooms.get(appointment.getScheduleRoom().getName()).replace(appointment, replacement);
+    }
+
+    /**
+     * Tells the data index that a value of an appointment of this store changed. The appointment is found by
+     * identity, changes of appointments which are not in this store are ignored.
+     *
+     * @return - Whether the appointment is in this store
+     */
+    public boolean reindex(Appointment appointment, String key, Object oldValue, Object newValue) {
+        materialize();
+        Room room = rooms.get(appointment.getScheduleRoom().getName());
+        return room != null && room.reindex(appointment, key, oldValue, newValue);
+    }
+
+    /**
+     * Indexes data of every room again with the given tokenizer. Must be called while holding the lock of the
+     * schedule on a store which indexes data.
+     */
+    public void setTokenizer(DataTokenizer tokenizer) {
+        materialize();
+        this.tokenizer = tokenizer;
+        rooms.values().forEach(Room::indexData);
+    }
+
+    public void removeRoom(ScheduleRoom scheduleRoom) {
+        materialize();
+        if (rooms.remove(scheduleRoom.getName()) != null) removedRooms.add(scheduleRoom.getName());
+    }
+
+    /**
+     * Lists appointments of a room partitioned under dates between the given dates, both inclusive.
+     */
+    public List<Appointment> between(ScheduleRoom scheduleRoom, LocalDate from, LocalDate to) {
+        materialize();
+        Room room = rooms.get(scheduleRoom.getName());
+        if (room == null || from.isAfter(to)) return new ArrayList<>();
+        List<Appointment> appointments = new ArrayList<>();
+        room.between(from, to).forEach(partition -> partition.forEach(entry -> appointments.add(entry.appointment)));
+        return appointments;
+    }
+
+    /**
+     * Performs the action on every appointment, room by room. Must be called while holding the lock of the schedule.
+     */
+    public void forEach(Consumer<Appointment> action) {
+        materialize();
+        rooms.values().forEach(room -> room.forEach(action));
+    }
+
+    public int size() {
+        if (pending != null) return pending.get().size();
+        return rooms.values().stream().mapToInt(room -> room.size).sum();
+    }
+
+    /**
+     * Adds the appointments from the supplier when the store is first used. Until then they are published as they are.
+     * Must be called on an empty store.
+     */
+    public void addLater(Supplier<List<Appointment>> appointments) {
+        Supplier<List<Appointment>> once = new Supplier<>() {
+            private List<Appointment> list;
+
+            @Override
+            public synchronized List<Appointment> get() {
+                if (list == null) list = appointments.get();
+                return list;
+            }
+        };
+        this.pending = once;
+    }
+
+    private void materialize() {
+        if (pending == null) return;
+        synchronized (this) {
+            Supplier<List<Appointment>> appointments = pending;
+            if (appointments == null) return;
+            appointments.get().forEach(this::append);
+            pending = null;
+        }
+    }
+
+    /**
+     * Publishes the current state of the given rooms on top of a previous view.
+     * <p>
+     * Only the given rooms are read, as other rooms may be changed in parallel under their own locks. Every room is
+     * read, and a view of another store or of pending appointments is rebuilt, only when the rooms are null, which
+     * must be called while holding the lock of the schedule exclusively. A view of pending appointments stays the base
+     * of changes of single rooms, its rooms are partitioned as they were added.
+     *
+     * @param previous - Previously published view, views of other stores are not reused
+     * @param names - Rooms changed since the previous view, or null for every changed room
+     * @return - New view, or the previous one if nothing changed
+     */
+    public View publish(View previous, Collection<String> names) {
+        Supplier<List<Appointment>> appointments = pending;
+        if (appointments != null) return (previous != null && previous.pending == appointments) ? previous : new View(this, appointments);
+
+        boolean foreign = previous == null || previous.owner != this;
+        if (names != null && foreign) throw new IllegalStateException("Rooms are published on top of a view of another store");
+        if (names == null && (foreign || previous.pending != null)) {
+            Map<String, RoomView> views = new HashMap<>();
+            rooms.forEach((name, room) -> {
+                if (room.size > 0) views.put(name, room.freeze());
+            });
+            removedRooms.clear();
+            return new View(this, RoomTable.of(views));
+        }
+
+        Collection<String> changed = names;
+        if (changed == null) {
+            Set<String> changedRooms = new HashSet<>(removedRooms);
+            removedRooms.clear();
+            rooms.forEach((name, room) -> {
+                if (room.changed) changedRooms.add(name);
+            });
+            changed = changedRooms;
+        }
+
+        RoomTable views = previous.rooms();
+        for (String name : changed) {
+            Room room = rooms.get(name);
+            views = views.with(name, (room == null || room.size == 0) ? null : room.freeze());
+        }
+        return (views == previous.rooms()) ? previous : new View(this, views);
+    }
+
+    private static final class Entry {
+        private final long sequence;
+        private final Appointment appointment;
+        // Generation of the first frozen view of its room without this entry, index postings of older views keep it
+        private volatile long removed = Long.MAX_VALUE;
+
+        private Entry(long sequence, Appointment appointment) {
+            this.sequence = sequence;
+            this.appointment = appointment;
+        }
+    }
+
+    // Working partitions of one room. Months and date lists are replaced rather than changed once a frozen view shares
+    // them, and changed in place until then
+    private final class Room {
+        private final NavigableMap<Integer, Month> months = new TreeMap<>();
+        private final Set<Integer> ownMonths = new HashSet<>();
+        private final Set<List<Entry>> ownPartitions = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final List<Entry> undated = new ArrayList<>();
+        private DataIndex data = (tokenizer == null) ? null : new DataIndex();
+        private int size;
+        private boolean changed;
+        private long generation;
+        private RoomView frozen = RoomView.EMPTY;
+
+        private void add(Entry entry) {
+            LocalDate date = dateKey.apply(entry.appointment.getTime());
+            if (date == null) undated.add(entry);
+            else writablePartition(date).add(entry);
+            if (data != null) data.addAll(entry, tokenizer);
+            size++;
+            changed = true;
+        }
+
+        private Appointment remove(Appointment appointment) {
+            LocalDate date = dateKey.apply(appointment.getTime());
+            Entry removed;
+            if (date == null) {
+                int index = indexOf(undated, appointment, false);
+                if (index < 0) return null;
+                removed = undated.remove(index);
+            }
+            else {
+                Month month = months.get(monthOf(date));
+                int index = (month == null) ? -1 : indexOf(month.on(date), appointment, false);
+                if (index < 0) return null;
+                List<Entry> partition = writablePartition(date);
+                removed = partition.remove(index);
+                if (partition.isEmpty()) {
+                    month = writable(date);
+                    month.set(date, null);
+                    ownPartitions.remove(partition);
+                    if (month.isEmpty()) months.remove(monthOf(date));
+                }
+            }
+            removed.removed = generation + 1;
+            if (data != null) data.removeAll(removed, tokenizer);
+            size--;
+            changed = true;
+            return removed.appointment;
+        }
+
+        private boolean contains(Appointment appointment, boolean identity) {
+            LocalDate date = dateKey.apply(appointment.getTime());
+            if (date == null) return indexOf(undated, appointment, identity) >= 0;
+            Month month = months.get(monthOf(date));
+            return month != null && indexOf(month.on(date), appointment, identity) >= 0;
+        }
+
+        private void replace(Appointment appointment, Appointment replacement) {
+            LocalDate date = dateKey.apply(appointment.getTime());
+            List<Entry> partition = (date == null) ? undated : writablePartition(date);
+            int index = indexOf(partition, appointment, true);
+            Entry entry = new Entry(partition.get(index).sequence, replacement);
+            Entry replaced = partition.set(index, entry);
+            replaced.removed = generation + 1;
+            if (data != null) {
+                data.removeAll(replaced, tokenizer);
+                data.addAll(entry, tokenizer);
+            }
+            changed = true;
+        }
+
+        private boolean reindex(Appointment appointment, String key, Object oldValue, Object newValue) {
+            if (data == null) return false;
+            LocalDate date = dateKey.apply(appointment.getTime());
+            List<Entry> partition = (date == null) ? undated : Optional.ofNullable(months.get(monthOf(date))).map(month -> month.on(date)).orElse(List.of());
+            int index = indexOf(partition, appointment, true);
+            if (index < 0) return false;
+            data.remove(partition.get(index), key, oldValue, tokenizer);
+            if (newValue != null || (appointment.getAllData() != null && appointment.getAllData().containsKey(key))) data.add(partition.get(index), key, newValue, tokenizer);
+            changed = true;
+            return true;
+        }
+
+        private void indexData() {
+            if (data == null) return;
+            DataIndex index = new DataIndex();
+            Stream.concat(months.values().stream().flatMap(Month::partitions), Stream.of(undated))
+                    .forEach(partition -> partition.forEach(entry -> index.addAll(entry, tokenizer)));
+            data = index;
+            changed = true;
+        }
+
+        private Stream<List<Entry>> between(LocalDate from, LocalDate to) {
+            return partitionsBetween(months, from, to);
+        }
+
+        private void forEach(Consumer<Appointment> action) {
+            Stream.concat(months.values().stream().flatMap(Month::partitions), Stream.of(undated))
+                    .forEach(partition -> partition.forEach(entry -> action.accept(entry.appointment)));
+        }
+
+        // Month of the date which is not shared with the frozen view
+        private Month writable(LocalDate date) {
+            int key = monthOf(date);
+            Month month = months.get(key);
+            if (ownMonths.add(key) || month == null) {
+                month = (month == null) ? new Month() : month.copy();
+                months.put(key, month);
+            }
+            return month;
+        }
+
+        // Partition of the date which is not shared with the frozen view
+        private List<Entry> writablePartition(LocalDate date) {
+            Month month = writable(date);
+            List<Entry> partition = month.on(date);
+            if (!ownPartitions.contains(partition)) {
+                partition = new ArrayList<>(partition);
+                ownPartitions.add(partition);
+                month.set(date, partition);
+            }
+            return partition;
+        }
+
+        // Copies the map of months, months and date lists are shared until they change again
+        private RoomView freeze() {
+            if (!changed) return frozen;
+            frozen = new RoomView(new TreeMap<>(months), List.copyOf(undated), (data == null) ? null : data.freeze(), ++generation);
+            ownMonths.clear();
+            ownPartitions.clear();
+            changed = false;
+            return frozen;
+        }
+    }
+
+    // Entries of one room by data key and value, and by data key and token for tokenized keys. Maps of a key and lists
+    // of entries are replaced rather than changed once a frozen index shares them, and changed in place until then
+    private static final class DataIndex {
+        private final Map<String, Map<Object, List<Entry>>> values;
+        private final Map<String, Map<Object, List<Entry>>> tokens;
+        private final Set<String> ownValues = new HashSet<>();
+        private final Set<String> ownTokens = new HashSet<>();
+        private final Set<List<Entry>> ownEntries = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private DataIndex() {
+            this(new HashMap<>(), new HashMap<>());
+        }
+
+        private DataIndex(Map<String, Map<Object, List<Entry>>> values, Map<String, Map<Object, List<Entry>>> tokens) {
+            this.values = values;
+            this.tokens = tokens;
+        }
+
+        // Appointments made without a constructor, such as by reflection, may have no data at all
+        private void addAll(Entry entry, DataTokenizer tokenizer) {
+            Map<String, Object> data = entry.appointment.getAllData();
+            if (data != null) data.forEach((key, value) -> add(entry, key, value, tokenizer));
+        }
+
+        private void removeAll(Entry entry, DataTokenizer tokenizer) {
+            Map<String, Object> data = entry.appointment.getAllData();
+            if (data != null) data.forEach((key, value) -> remove(entry, key, value, tokenizer));
+        }
+
+        // A key held with a null value is posted under the null term, so it is found by the key but by no token
+        private void add(Entry entry, String key, Object value, DataTokenizer tokenizer) {
+            post(values, ownValues, key, value, entry, true);
+            if (value != null && tokenizer.isTokenized(key)) tokenizer.tokens(key, value).forEach(token -> post(tokens, ownTokens, key, token, entry, true));
+        }
+
+        private void remove(Entry entry, String key, Object value, DataTokenizer tokenizer) {
+            post(values, ownValues, key, value, entry, false);
+            if (value != null && tokenizer.isTokenized(key)) tokenizer.tokens(key, value).forEach(token -> post(tokens, ownTokens, key, token, entry, false));
+        }
+
+        private void post(Map<String, Map<Object, List<Entry>>> index, Set<String> own, String key, Object term, Entry entry, boolean add) {
+            Map<Object, List<Entry>> terms = index.get(key);
+            List<Entry> entries = (terms == null) ? null : terms.get(term);
+            int position = -1;
+            if (!add) {
+                for (int i = 0; entries != null && i < entries.size() && position < 0; i++) {
+                    if (entries.get(i) == entry) position = i;
+                }
+                if (position < 0) return;
+            }
+            if (own.add(key) || terms == null) {
+                terms = (terms == null) ? new HashMap<>() : new HashMap<>(terms);
+                index.put(key, terms);
+            }
+            if (entries == null || !ownEntries.contains(entries)) {
+                entries = (entries == null) ? new ArrayList<>() : new ArrayList<>(entries);
+                ownEntries.add(entries);
+                terms.put(term, entries);
+            }
+            if (add) entries.add(entry);
+            else entries.remove(position);
+            if (entries.isEmpty()) {
+                terms.remove(term);
+                ownEntries.remove(entries);
+            }
+            if (terms.isEmpty()) index.remove(key);
+        }
+
+        // Copies the maps of keys, maps of terms and lists of entries are shared until they change again
+        private DataIndex freeze() {
+            ownValues.clear();
+            ownTokens.clear();
+            ownEntries.clear();
+            return new DataIndex(new HashMap<>(values), new HashMap<>(tokens));
+        }
+
+        // Entries under the term of the key, or under every term of the key if the term is null
+        private Stream<List<Entry>> entries(String key, Object term, boolean token) {
+            Map<Object, List<Entry>> terms = (token ? tokens : values).get(key);
+            if (terms == null) return Stream.empty();
+            if (term == null) return terms.values().stream();
+            List<Entry> entries = terms.get(term);
+            return (entries == null) ? Stream.empty() : Stream.of(entries);
+        }
+    }
+
+    // Date partitions of one month indexed by day of month, missing partitions are null
+    private static final class Month {
+        private final Object[] days;
+
+        private Month() {
+            this(new Object[31]);
+        }
+
+        private Month(Object[] days) {
+            this.days = days;
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Entry> on(LocalDate date) {
+            Object partition = days[date.getDayOfMonth() - 1];
+            return (partition == null) ? Collections.emptyList() : (List<Entry>) partition;
+        }
+
+        private void set(LocalDate date, List<Entry> partition) {
+            days[date.getDayOfMonth() - 1] = partition;
+        }
+
+        private boolean isEmpty() {
+            return Arrays.stream(days).allMatch(Objects::isNull);
+        }
+
+        private Month copy() {
+            return new Month(days.clone());
+        }
+
+        // Partitions of the days between the given days of month, both inclusive
+        @SuppressWarnings("unchecked")
+        private Stream<List<Entry>> partitions(int from, int to) {
+            return Arrays.stream(days, from - 1, to).filter(Objects::nonNull).map(partition -> (List<Entry>) partition);
+        }
+
+        private Stream<List<Entry>> partitions() {
+            return partitions(1, days.length);
+        }
+    }
+
+    private static Stream<List<Entry>> partitionsBetween(NavigableMap<Integer, Month> months, LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) return Stream.empty();
+        int first = monthOf(from), last = monthOf(to);
+        return months.subMap(first, true, last, true).entrySet().stream().flatMap(month -> month.getValue().partitions(
+                (month.getKey() == first) ? from.getDayOfMonth() : 1,
+                (month.getKey() == last) ? to.getDayOfMonth() : 31));
+    }
+
+    private static int indexOf(List<Entry> entries, Appointment appointment, boolean identity) {
+        for (int i = 0; i < entries.size(); i++) {
+            Appointment candidate = entries.get(i).appointment;
+            if (identity ? candidate == appointment : candidate.equals(appointment)) return i;
+        }
+        return -1;
+    }
+
+    private static int monthOf(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    private static LocalDate firstDayOf(int month) {
+        return LocalDate.of(Math.floorDiv(month, 12), Math.floorMod(month, 12) + 1, 1);
+    }
+
+    // Frozen partitions of one room, shares every month which did not change with the previous frozen view
+    private static final class RoomView {
+
+        private static final RoomView EMPTY = new RoomView(Collections.emptyNavigableMap(), List.of(), null, 0);
+
+        private final NavigableMap<Integer, Month> months;
+        private final List<Entry> undated;
+        private final DataIndex data;
+        private final long generation;
+        private volatile List<Entry> entries;
+
+        private RoomView(NavigableMap<Integer, Month> months, List<Entry> undated, DataIndex data, long generation) {
+            this.months = months;
+            this.undated = undated;
+            this.data = data;
+            this.generation = generation;
+        }
+
+        private static RoomView of(List<Entry> entries, Function<Time<LocalDate>, LocalDate> dateKey, DataTokenizer tokenizer) {
+            NavigableMap<Integer, Month> months = new TreeMap<>();
+            List<Entry> undated = new ArrayList<>();
+            DataIndex data = (tokenizer == null) ? null : new DataIndex();
+            for (Entry entry : entries) {
+                if (data != null) data.addAll(entry, tokenizer);
+                LocalDate date = dateKey.apply(entry.appointment.getTime());
+                if (date == null) {
+                    undated.add(entry);
+                    continue;
+                }
+                Month month = months.computeIfAbsent(monthOf(date), key -> new Month());
+                List<Entry> partition = month.on(date);
+                if (partition.isEmpty()) month.set(date, partition = new ArrayList<>());
+                partition.add(entry);
+            }
+            return new RoomView(months, undated, data, 0);
+        }
+
+        private Stream<List<Entry>> partitions() {
+            return Stream.concat(months.values().stream().flatMap(Month::partitions), Stream.of(undated));
+        }
+
+        private List<Entry> on(LocalDate date) {
+            Month month = months.get(monthOf(date));
+            return (month == null) ? Collections.emptyList() : month.on(date);
+        }
+
+        private Stream<List<Entry>> between(LocalDate from, LocalDate to) {
+            return partitionsBetween(months, from, to);
+        }
+
+        // Dated partitions between the given dates, both inclusive, a null date leaves the range open
+        private Stream<List<Entry>> select(LocalDate from, LocalDate to) {
+            if (from == null && to == null) return partitions();
+            if (months.isEmpty()) return Stream.empty();
+            LocalDate first = (from != null) ? from : firstDayOf(months.firstKey());
+            LocalDate last = (to != null) ? to : firstDayOf(months.lastKey() + 1).minusDays(1);
+            return partitionsBetween(months, first, last);
+        }
+
+        // Entries under the term of the data key which are still in this view, the index misses changes made
+        // directly to the map of data, so it may keep entries removed before this view was frozen
+        private Stream<List<Entry>> select(String key, Object term, boolean token) {
+            return data.entries(key, term, token).map(entries -> entries.stream().filter(entry -> entry.removed > generation).collect(Collectors.toList()));
+        }
+
+        // Number of entries under the term of the data key, or -1 if this view does not index data
+        private int count(String key, Object term, boolean token) {
+            return (data == null) ? -1 : data.entries(key, term, token).mapToInt(List::size).sum();
+        }
+
+        private Stream<List<Entry>> before(LocalDate date) {
+            return Stream.concat(months.headMap(monthOf(date), false).values().stream().flatMap(Month::partitions),
+                    between(date.withDayOfMonth(1), date.minusDays(1)));
+        }
+
+        // Entries in the order they were added, merged when first read
+        private List<Entry> entries() {
+            List<Entry> list = entries;
+            if (list == null) {
+                List<Entry> merged = new ArrayList<>();
+                partitions().forEach(merged::addAll);
+                merged.sort(Comparator.comparingLong(entry -> entry.sequence));
+                list = Collections.unmodifiableList(merged);
+                entries = list;
+            }
+            return list;
+        }
+    }
+
+    // Frozen rooms sorted by name, changing one room copies the array of views and shares the names
+    private static final class RoomTable {
+
+        private static final RoomTable EMPTY = new RoomTable(new String[0], new RoomView[0]);
+
+        private final String[] names;
+        private final RoomView[] views;
+
+        private RoomTable(String[] names, RoomView[] views) {
+            this.names = names;
+            this.views = views;
+        }
+
+        private static RoomTable of(Map<String, RoomView> views) {
+            SortedMap<String, RoomView> sorted = new TreeMap<>(views);
+            return new RoomTable(sorted.keySet().toArray(new String[0]), sorted.values().toArray(new RoomView[0]));
+        }
+
+        private RoomView get(String name) {
+            int index = Arrays.binarySearch(names, name);
+            return (index < 0) ? null : views[index];
+        }
+
+        // Table with the view of the room replaced, or without the room if the view is null
+        private RoomTable with(String name, RoomView view) {
+            int index = Arrays.binarySearch(names, name);
+            if (index >= 0 && views[index] == view || index < 0 && view == null) return this;
+            if (index >= 0 && view != null) {
+                RoomView[] changed = views.clone();
+                changed[index] = view;
+                return new RoomTable(names, changed);
+            }
+            List<String> changedNames = new ArrayList<>(Arrays.asList(names));
+            List<RoomView> changedViews = new ArrayList<>(Arrays.asList(views));
+            if (index >= 0) {
+                changedNames.remove(index);
+                changedViews.remove(index);
+            }
+            else {
+                changedNames.add(-index - 1, name);
+                changedViews.add(-index - 1, view);
+            }
+            return new RoomTable(changedNames.toArray(new String[0]), changedViews.toArray(new RoomView[0]));
+        }
+
+        private Stream<RoomView> values() {
+            return Arrays.stream(views);
+        }
+    }
+
+    /**
+     * Immutable state of the store at the time it was published.
+     * <p>
+     * Lookups by date merge the partitions of every room back into the order in which appointments were added.
+     */
+    static final class View implements AppointmentQuery.Source {
+
+        static final View EMPTY = new View(null, RoomTable.EMPTY);
+
+        private final AppointmentStore owner;
+        private final DataTokenizer tokenizer;
+        private final Supplier<List<Appointment>> pending;
+        private volatile RoomTable rooms;
+        private volatile List<Appointment> appointments;
+
+        private View(AppointmentStore owner, RoomTable rooms) {
+            this.owner = owner;
+            this.tokenizer = (owner == null) ? null : owner.tokenizer;
+            this.pending = null;
+            this.rooms = rooms;
+        }
+
+        // View of appointments which are not added to the store yet, they are partitioned when first read
+        private View(AppointmentStore owner, Supplier<List<Appointment>> pending) {
+            this.owner = owner;
+            this.tokenizer = owner.tokenizer;
+            this.pending = pending;
+        }
+
+        private RoomTable rooms() {
+            RoomTable views = rooms;
+            if (views != null) return views;
+            synchronized (this) {
+                if (rooms != null) return rooms;
+                Map<String, List<Entry>> entries = new HashMap<>();
+                List<Appointment> list = pending.get();
+                for (int i = 0; i < list.size(); i++) {
+                    Appointment appointment = list.get(i);
+                    entries.computeIfAbsent(appointment.getScheduleRoom().getName(), name -> new ArrayList<>()).add(new Entry(i, appointment));
+                }
+                Map<String, RoomView> partitioned = new HashMap<>();
+                entries.forEach((name, roomEntries) -> partitioned.put(name, RoomView.of(roomEntries, owner.dateKey, tokenizer)));
+                views = RoomTable.of(partitioned);
+                rooms = views;
+                return views;
+            }
+        }
+
+        /**
+         * @return - Unmodifiable list of all appointments in the order they were added
+         */
+        public List<Appointment> getAppointments() {
+            List<Appointment> list = appointments;
+            if (list == null) {
+                if (pending != null) list = Collections.unmodifiableList(pending.get());
+                else list = merge(rooms().values().flatMap(RoomView::partitions));
+                appointments = list;
+            }
+            return list;
+        }
+
+        public Stream<Appointment> stream() {
+            return getAppointments().stream();
+        }
+
+        public Stream<Appointment> ofRoom(String name) {
+            RoomView room = rooms().get(name);
+            return (room == null) ? Stream.empty() : room.entries().stream().map(entry -> entry.appointment);
+        }
+
+        /**
+         * Streams appointments partitioned under the given date.
+         */
+        public Stream<Appointment> on(LocalDate date) {
+            return merge(rooms().values().map(room -> room.on(date))).stream();
+        }
+
+        /**
+         * Streams appointments partitioned under dates between the given dates, both inclusive.
+         */
+        public Stream<Appointment> between(LocalDate from, LocalDate to) {
+            if (from.isAfter(to)) return Stream.empty();
+            return merge(rooms().values().flatMap(room -> room.between(from, to))).stream();
+        }
+
+        /**
+         * Streams appointments partitioned under dates before the given date.
+         */
+        public Stream<Appointment> before(LocalDate date) {
+            return merge(rooms().values().flatMap(room -> room.before(date))).stream();
+        }
+
+        /**
+         * Streams appointments of one room, or of every room if the room is null, partitioned under dates between the
+         * given dates, both inclusive. A null date leaves the range open, with both dates null undated appointments
+         * are streamed as well.
+         */
+        @Override
+        public Stream<Appointment> select(ScheduleRoom room, LocalDate from, LocalDate to) {
+            if (from != null && to != null && from.isAfter(to)) return Stream.empty();
+            return merge(roomsOf(room).flatMap(view -> view.select(from, to))).stream();
+        }
+
+        @Override
+        public int count(ScheduleRoom room, LocalDate from, LocalDate to) {
+            if (from != null && to != null && from.isAfter(to)) return 0;
+            return roomsOf(room).flatMap(view -> view.select(from, to)).mapToInt(List::size).sum();
+        }
+
+        @Override
+        public Stream<Appointment> selectData(ScheduleRoom room, String key, Object term, boolean token) {
+            return merge(roomsOf(room).flatMap(view -> view.select(key, term, token))).stream();
+        }
+
+        @Override
+        public int countData(ScheduleRoom room, String key, Object term, boolean token) {
+            if (tokenizer == null || token && !tokenizer.isTokenized(key)) return -1;
+            int count = 0;
+            for (RoomView view : (Iterable<RoomView>) roomsOf(room)::iterator) {
+                int entries = view.count(key, term, token);
+                if (entries < 0) return -1;
+                count += entries;
+            }
+            return count;
+        }
+
+        // Views of the room, or of every room if the room is null
+        private Stream<RoomView> roomsOf(ScheduleRoom room) {
+            if (room == null) return rooms().values();
+            RoomView view = rooms().get(room.getName());
+            return (view == null) ? Stream.empty() : Stream.of(view);
+        }
+
+        public int size() {
+            return getAppointments().size();
+        }
+
+        // Partitions are sorted runs of sequence numbers, which the sort merges
+        private static List<Appointment> merge(Stream<List<Entry>> partitions) {
+            List<Entry> entries = new ArrayList<>();
+            partitions.forEach(entries::addAll);
+            entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+            List<Appointment> appointments = new ArrayList<>(entries.size());
+            entries.forEach(entry -> appointments.add(entry.appointment));
+            return Collections.unmodifiableList(appointments);
+        }
+
+    }
+
+}
@@ -0,0 +1,266 @@
+package com.raf.sk.specification;
+
+import com.google.gson.Gson;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.Equipment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.ReservedTime;
+import com.raf.sk.specification.model.time.Time;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Versioned columnar binary layout of reserved appointments.
+ * <p>
+ * After the header (magic, version, appointment count) come the rooms table, the table of data values and the
+ * table of data keys. Appointments follow column by column: room index, day ordinal, start and end minute, start
+ * and end epoch day, and one column of value indices (-1 when absent, -2 when the value is null) per data key. String values are stored as
+ * they are, other values as JSON. Files are written through a direct buffer and read through a memory mapping,
+ * so columns are bulk copied without parsing any text.
+ */
+final class BinaryScheduleFormat {
+
+    public static final int MAGIC = 0x534B5342;
+    public static final int VERSION = 1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    static final byte STRING_VALUE = 0, JSON_VALUE = 1;
+    private static final byte NO_DAY = -1;
+    private static final int NO_VALUE = -1, NULL_VALUE = -2;
+
+    private final Gson gson = new Gson();
+
+    public void write(List<Appointment> appointments, String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            write(appointments, out);
+            out.flush();
+        }
+    }
+
+    /**
+     * Writes the appointment count followed by the tables and columns of the given appointments.
+     */
+    public void write(List<Appointment> appointments, ChannelOutput out) throws IOException {
+        int count = appointments.size();
+        Map<String, Integer> roomIds = new HashMap<>();
+        List<ScheduleRoom> rooms = new ArrayList<>();
+        Map<Object, Integer> valueIds = new HashMap<>();
+        List<Object> values = new ArrayList<>();
+        Map<String, int[]> dataColumns = new LinkedHashMap<>();
+
+        for (int i = 0; i < count; i++) {
+            Appointment appointment = appointments.get(i);
+            ScheduleRoom room = appointment.getScheduleRoom();
+            if (roomIds.putIfAbsent(room.getName(), rooms.size()) == null) rooms.add(room);
+            if (appointment.getAllData() == null) continue;
+            for (Map.Entry<String, Object> entry : appointment.getAllData().entrySet()) {
+                int[] column = dataColumns.computeIfAbsent(entry.getKey(), key -> {
+                    int[] absent = new int[count];
+                    Arrays.fill(absent, NO_VALUE);
+                    return absent;
+                });
+                if (entry.getValue() == null) {
+                    column[i] = NULL_VALUE;
+                    continue;
+                }
+                Integer id = valueIds.putIfAbsent(entry.getValue(), values.size());
+                if (id == null) {
+                    id = values.size();
+                    values.add(entry.getValue());
+                }
+                column[i] = id;
+            }
+        }
+
+        out.putInt(count);
+
+        out.putInt(rooms.size());
+        for (ScheduleRoom room : rooms) {
+            out.putString(room.getName());
+            out.putInt(room.getCapacity());
+            out.putInt(room.getEquipment().size());
+            for (Equipment equipment : room.getEquipment()) {
+                out.putString(equipment.getName());
+                out.putInt(equipment.getAmount());
+            }
+        }
+
+        out.putInt(values.size());
+        for (Object value : values) {
+            boolean string = value instanceof String;
+            out.putByte(string ? STRING_VALUE : JSON_VALUE);
+            out.putString(string ? (String) value : gson.toJson(value));
+        }
+
+        out.putInt(dataColumns.size());
+        for (String key : dataColumns.keySet()) out.putString(key);
+
+        for (Appointment appointment : appointments) out.putInt(roomIds.get(appointment.getScheduleRoom().getName()));
+        for (Appointment appointment : appointments) {
+            Day day = appointment.getTime().getDay();
+            out.putByte((day == null) ? NO_DAY : (byte) day.ordinal());
+        }
+        for (Appointment appointment : appointments) out.putShort((short) appointment.getTime().getStartMinute());
+        for (Appointment appointment : appointments) out.putShort((short) appointment.getTime().getEndMinute());
+        for (Appointment appointment : appointments) out.putInt((int) appointment.getTime().getStartDate().toEpochDay());
+        for (Appointment appointment : appointments) out.putInt((int) appointment.getTime().getEndDate().toEpochDay());
+        for (int[] column : dataColumns.values()) {
+            for (int id : column) out.putInt(id);
+        }
+    }
+
+    /**
+     * Reads appointments in the order they were written.
+     *
+     * @param path - Path to the binary file
+     * @param roomsByName - Map of rooms by name, rooms missing from it are created and added
+     * @return - Appointments in file order
+     * @throws IOException if the file is not a binary schedule of a supported version or is truncated
+     */
+    public List<Appointment> read(String path, Map<String, ScheduleRoom> roomsByName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 12 || in.getInt() != MAGIC) throw new IOException("Not a binary schedule: " + path);
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException("Unsupported binary schedule version " + version);
+            return read(in, roomsByName);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated binary schedule: " + path, e);
+        }
+    }
+
+    /**
+     * Reads the appointment count followed by the tables and columns written by {@link #write(List, ChannelOutput)}.
+     */
+    public List<Appointment> read(ByteBuffer in, Map<String, ScheduleRoom> roomsByName) {
+        int count = in.getInt();
+        ScheduleRoom[] rooms = new ScheduleRoom[in.getInt()];
+        for (int i = 0; i < rooms.length; i++) {
+            String name = getString(in);
+            int capacity = in.getInt();
+            List<Equipment> equipment = new ArrayList<>();
+            for (int j = in.getInt(); j > 0; j--) equipment.add(new Equipment(getString(in), in.getInt()));
+            rooms[i] = roomsByName.computeIfAbsent(name, n -> new ScheduleRoom(n, capacity, equipment));
+        }
+
+        Object[] values = new Object[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            byte type = in.get();
+            String value = getString(in);
+            values[i] = (type == STRING_VALUE) ? value : gson.fromJson(value, Object.class);
+        }
+
+        String[] keys = new String[in.getInt()];
+        for (int i = 0; i < keys.length; i++) keys[i] = getString(in).intern();
+
+        int[] roomColumn = getInts(in, count);
+        byte[] dayColumn = new byte[count];
+        in.get(dayColumn);
+        short[] startMinutes = getShorts(in, count);
+        short[] endMinutes = getShorts(in, count);
+        int[] startDays = getInts(in, count);
+        int[] endDays = getInts(in, count);
+        int[][] dataColumns = new int[keys.length][];
+        for (int k = 0; k < keys.length; k++) dataColumns[k] = getInts(in, count);
+
+        Day[] days = Day.values();
+        List<Appointment> appointments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Day day = (dayColumn[i] == NO_DAY) ? null : days[dayColumn[i]];
+            Time<LocalDate> time = new ReservedTime(day, startMinutes[i], endMinutes[i],
+                    LocalDate.ofEpochDay(startDays[i]), LocalDate.ofEpochDay(endDays[i]));
+            Map<String, Object> data = new LinkedHashMap<>();
+            for (int k = 0; k < keys.length; k++) {
+                int id = dataColumns[k][i];
+                if (id != NO_VALUE) data.put(keys[k], (id == NULL_VALUE) ? null : values[id]);
+            }
+            appointments.add(new Appointment(time, rooms[roomColumn[i]], data));
+        }
+        return appointments;
+    }
+
+    static int[] getInts(ByteBuffer in, int count) {
+        int[] column = new int[count];
+        in.asIntBuffer().get(column);
+        in.position(in.position() + count * Integer.BYTES);
+        return column;
+    }
+
+    static short[] getShorts(ByteBuffer in, int count) {
+        short[] column = new short[count];
+        in.asShortBuffer().get(column);
+        in.position(in.position() + count * Short.BYTES);
+        return column;
+    }
+
+    static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Buffers primitive writes in a direct buffer which is drained to the channel whenever it fills up
+    static final class ChannelOutput {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        ChannelOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void putByte(byte value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put(value);
+        }
+
+        void putShort(short value) throws IOException {
+            ensure(Short.BYTES);
+            buffer.putShort(value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void putString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            for (int offset = 0; offset < bytes.length; ) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) flush();
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            buffer.clear();
+        }
+    }
+
+}
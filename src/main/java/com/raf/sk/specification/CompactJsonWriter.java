@@ -0,0 +1,108 @@
+package com.raf.sk.specification;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Equipment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.Time;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Streaming writer of the compact JSON layout (version 2).
+ * <p>
+ * Every room is written once to a rooms table and string data values are written once to a strings table,
+ * appointments refer to both by index:
+ * <pre>
+ * {"version":2,
+ *  "rooms":[{"name":"Raf04 (u)","capacity":0,"equipment":[{"name":"PC","amount":30}]}],
+ *  "strings":["Professor 1"],
+ *  "appointments":[[0,"MONDAY","8:00","10:00","2023-01-02","2023-01-02",{"PROFESSOR":0}]]}
+ * </pre>
+ * A data value which is not a string is written as a one-element array holding the value.
+ */
+final class CompactJsonWriter {
+
+    public static final int VERSION = 2;
+
+    private final Gson gson = new Gson();
+
+    public void write(List<Appointment> appointments, Writer out) throws IOException {
+        Map<String, Integer> roomIds = new LinkedHashMap<>();
+        List<ScheduleRoom> rooms = new ArrayList<>();
+        Map<String, Integer> stringIds = new LinkedHashMap<>();
+        for (Appointment appointment : appointments) {
+            ScheduleRoom room = appointment.getScheduleRoom();
+            if (roomIds.putIfAbsent(room.getName(), rooms.size()) == null) rooms.add(room);
+            if (appointment.getAllData() == null) continue;
+            for (Object value : appointment.getAllData().values()) {
+                if (value instanceof String) stringIds.putIfAbsent((String) value, stringIds.size());
+            }
+        }
+
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject();
+        writer.name("version").value(VERSION);
+
+        writer.name("rooms").beginArray();
+        for (ScheduleRoom room : rooms) writeRoom(writer, room);
+        writer.endArray();
+
+        writer.name("strings").beginArray();
+        for (String value : stringIds.keySet()) writer.value(value);
+        writer.endArray();
+
+        writer.name("appointments").beginArray();
+        for (Appointment appointment : appointments) {
+            Time<LocalDate> time = appointment.getTime();
+            writer.beginArray();
+            writer.value(roomIds.get(appointment.getScheduleRoom().getName()));
+            writer.value(String.valueOf(time.getDay()));
+            writer.value(time.getStartTime());
+            writer.value(time.getEndTime());
+            writer.value(time.getStartDate().toString());
+            writer.value(time.getEndDate().toString());
+            writeData(writer, appointment.getAllData(), stringIds);
+            writer.endArray();
+        }
+        writer.endArray();
+
+        writer.endObject();
+        writer.flush();
+    }
+
+    private void writeRoom(JsonWriter writer, ScheduleRoom room) throws IOException {
+        writer.beginObject();
+        writer.name("name").value(room.getName());
+        writer.name("capacity").value(room.getCapacity());
+        writer.name("equipment").beginArray();
+        for (Equipment equipment : room.getEquipment()) {
+            writer.beginObject();
+            writer.name("name").value(equipment.getName());
+            writer.name("amount").value(equipment.getAmount());
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    private void writeData(JsonWriter writer, Map<String, Object> data, Map<String, Integer> stringIds) throws IOException {
+        writer.beginObject();
+        for (Map.Entry<String, Object> entry : (data == null) ? Map.<String, Object>of().entrySet() : data.entrySet()) {
+            writer.name(entry.getKey());
+            Object value = entry.getValue();
+            if (value instanceof String) writer.value(stringIds.get(value));
+            else {
+                writer.beginArray();
+                gson.toJson(gson.toJsonTree(value), writer);
+                writer.endArray();
+            }
+        }
+        writer.endObject();
+    }
+
+}
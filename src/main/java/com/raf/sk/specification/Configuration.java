@@ -15,6 +15,13 @@ final class Configuration {
     private String[] equipment;
     private boolean csvHeader;
     private String columns;
+    private FreeTimeMode freeTimeMode;
+    private int slotMinutes;
+    private int journalSyncRecords;
+    private int journalCompactRecords;
+    private String[] tokenizedData;
+    private String tokenSeparator;
+    private volatile WorkingCalendar workingCalendar;
 
     private Configuration() {
 
@@ -30,6 +37,12 @@ final class Configuration {
         private String[] equipment;
         private boolean csvHeader;
         private String columns;
+        private FreeTimeMode freeTimeMode = FreeTimeMode.MATERIALIZED;
+        private int slotMinutes = 15;
+        private int journalSyncRecords = 32;
+        private int journalCompactRecords = 10000;
+        private String[] tokenizedData = new String[0];
+        private String tokenSeparator = ",";
 
         public Builder() {
 
@@ -80,6 +93,36 @@ final class Configuration {
             return this;
         }
 
+        public Builder freeTimeMode(FreeTimeMode freeTimeMode) {
+            this.freeTimeMode = freeTimeMode;
+            return this;
+        }
+
+        public Builder slotMinutes(int slotMinutes) {
+            this.slotMinutes = slotMinutes;
+            return this;
+        }
+
+        public Builder journalSyncRecords(int journalSyncRecords) {
+            this.journalSyncRecords = journalSyncRecords;
+            return this;
+        }
+
+        public Builder journalCompactRecords(int journalCompactRecords) {
+            this.journalCompactRecords = journalCompactRecords;
+            return this;
+        }
+
+        public Builder tokenizedData(String[] tokenizedData) {
+            this.tokenizedData = tokenizedData;
+            return this;
+        }
+
+        public Builder tokenSeparator(String tokenSeparator) {
+            this.tokenSeparator = tokenSeparator;
+            return this;
+        }
+
         public Configuration build() {
             Configuration config = new Configuration();
             config.workingTime = this.workingTime;
@@ -91,6 +134,12 @@ final class Configuration {
             config.equipment = this.equipment;
             config.csvHeader = this.csvHeader;
             config.columns = this.columns;
+            config.freeTimeMode = this.freeTimeMode;
+            config.slotMinutes = this.slotMinutes;
+            config.journalSyncRecords = this.journalSyncRecords;
+            config.journalCompactRecords = this.journalCompactRecords;
+            config.tokenizedData = this.tokenizedData;
+            config.tokenSeparator = this.tokenSeparator;
             return config;
         }
     }
@@ -130,4 +179,40 @@ final class Configuration {
     public String getColumns() {
         return columns;
     }
+
+    public FreeTimeMode getFreeTimeMode() {
+        return freeTimeMode;
+    }
+
+    public int getSlotMinutes() {
+        return slotMinutes;
+    }
+
+    public int getJournalSyncRecords() {
+        return journalSyncRecords;
+    }
+
+    public int getJournalCompactRecords() {
+        return journalCompactRecords;
+    }
+
+    public String[] getTokenizedData() {
+        return tokenizedData;
+    }
+
+    public String getTokenSeparator() {
+        return tokenSeparator;
+    }
+
+    /**
+     * @return - Working days of the configured period, compiled when first asked for
+     */
+    public WorkingCalendar getWorkingCalendar() {
+        WorkingCalendar calendar = workingCalendar;
+        if (calendar == null) {
+            calendar = new WorkingCalendar(this);
+            workingCalendar = calendar;
+        }
+        return calendar;
+    }
 }
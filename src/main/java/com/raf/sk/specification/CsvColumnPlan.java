@@ -0,0 +1,83 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.ReservedTime;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * CSV header compiled into fixed column indices.
+ * <p>
+ * The header is read once: byte order marks are stripped, the indices of DAY, TIME, ROOM and the optional
+ * START_DATE and END_DATE columns are resolved, and data columns listed in the configuration are collected
+ * with interned keys. Every row is then turned into an appointment with index lookups only.
+ */
+final class CsvColumnPlan {
+
+    private static final String BOM = "\uFEFF";
+    private static final Set<String> RESERVED_COLUMNS = Set.of("START_DATE", "END_DATE", "DAY", "TIME", "ROOM");
+
+    private final int dayIndex, timeIndex, roomIndex;
+    private final int startDateIndex, endDateIndex;
+    private final boolean dateRange;
+    private final LocalDate defaultStartDate, defaultEndDate;
+    private final String[] dataKeys;
+    private final int[] dataIndices;
+
+    public CsvColumnPlan(String[] header, Configuration config) {
+        List<String> columns = new ArrayList<>(header.length);
+        for (String column : header) columns.add(column.replace(BOM, ""));
+
+        this.dayIndex = columns.indexOf("DAY");
+        this.timeIndex = columns.indexOf("TIME");
+        this.roomIndex = columns.indexOf("ROOM");
+        this.dateRange = config.getColumns().contains("START_DATE") && config.getColumns().contains("END_DATE");
+        this.startDateIndex = columns.indexOf("START_DATE");
+        this.endDateIndex = columns.indexOf("END_DATE");
+        this.defaultStartDate = config.getStartDate();
+        this.defaultEndDate = config.getEndDate();
+
+        List<String> keys = new ArrayList<>();
+        List<Integer> indices = new ArrayList<>();
+        for (String column : columns) {
+            if (RESERVED_COLUMNS.contains(column) || !config.getColumns().contains(column)) continue;
+            keys.add(column.intern());
+            indices.add(columns.indexOf(column));
+        }
+        this.dataKeys = keys.toArray(new String[0]);
+        this.dataIndices = indices.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Creates an appointment from a CSV row.
+     *
+     * @param row - CSV row
+     * @param roomsByName - Rooms of the schedule by name, rooms missing from it are created with capacity 0 and added
+     * @return - Appointment described by the row
+     */
+    public Appointment createAppointment(String[] row, Map<String, ScheduleRoom> roomsByName) {
+        String time = row[timeIndex];
+        int separator = time.indexOf('-');
+        String roomName = row[roomIndex];
+        ScheduleRoom scheduleRoom = roomsByName.computeIfAbsent(roomName, name -> new ScheduleRoom(name, 0));
+
+        LocalDate startDate = dateRange ? LocalDate.parse(row[startDateIndex]) : defaultStartDate;
+        LocalDate endDate = dateRange ? LocalDate.parse(row[endDateIndex]) : defaultEndDate;
+        ReservedTime reservedTime = new ReservedTime(Day.valueOf(row[dayIndex]), time.substring(0, separator), time.substring(separator + 1), startDate, endDate);
+
+        return new Appointment(reservedTime, scheduleRoom, getData(row));
+    }
+
+    private Map<String, Object> getData(String[] row) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = 0; i < dataKeys.length; i++) {
+            int index = dataIndices[i];
+            data.put(dataKeys[i], (index < row.length) ? row[index] : null);
+        }
+        return data;
+    }
+
+}
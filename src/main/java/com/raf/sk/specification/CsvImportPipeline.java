@@ -0,0 +1,121 @@
+package com.raf.sk.specification;
+
+import com.opencsv.CSVReader;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Multithreaded CSV parser.
+ * <p>
+ * One thread reads rows into a bounded queue and worker threads turn them into appointments through a shared
+ * {@link CsvColumnPlan}. Results are returned in row order, so the outcome does not depend on thread scheduling.
+ */
+final class CsvImportPipeline {
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final Row END = new Row(-1, null);
+
+    private final Configuration config;
+    private final ExecutorService executor;
+    private final int workers;
+
+    /**
+     * @param config - Schedule configuration
+     * @param executor - Executor with at least workers + 1 threads
+     * @param workers - Number of parsing threads
+     */
+    public CsvImportPipeline(Configuration config, ExecutorService executor, int workers) {
+        this.config = config;
+        this.executor = executor;
+        this.workers = workers;
+    }
+
+    /**
+     * Parses all rows of a CSV file.
+     *
+     * @param path - Path to the CSV file
+     * @param roomsByName - Thread-safe map of rooms by name, rooms missing from it are created and added
+     * @return - Appointments in row order
+     */
+    public List<Appointment> parse(String path, ConcurrentMap<String, ScheduleRoom> roomsByName) throws IOException {
+        try (CSVReader reader = new CSVReader(new FileReader(path))) {
+            String[] header = reader.readNext();
+            if (header == null) return new ArrayList<>();
+            CsvColumnPlan plan = new CsvColumnPlan(header, config);
+
+            BlockingQueue<Row> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            ConcurrentNavigableMap<Integer, RuntimeException> failures = new ConcurrentSkipListMap<>();
+            Future<Integer> rowCount = executor.submit(() -> read(reader, queue));
+
+            List<Future<List<Row>>> parsed = new ArrayList<>();
+            for (int i = 0; i < workers; i++) parsed.add(executor.submit(() -> parse(plan, queue, roomsByName, failures)));
+
+            Appointment[] appointments = new Appointment[rowCount.get()];
+            for (Future<List<Row>> future : parsed) {
+                for (Row row : future.get()) appointments[row.number] = row.appointment;
+            }
+            if (!failures.isEmpty()) throw failures.firstEntry().getValue();
+
+            List<Appointment> result = new ArrayList<>(appointments.length);
+            for (Appointment appointment : appointments) result.add(appointment);
+            return result;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV import interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private int read(CSVReader reader, BlockingQueue<Row> queue) throws IOException, InterruptedException {
+        int count = 0;
+        try {
+            String[] row;
+            while ((row = reader.readNext()) != null) queue.put(new Row(count++, row));
+        }
+        finally {
+            for (int i = 0; i < workers; i++) queue.put(END);
+        }
+        return count;
+    }
+
+    // Failed rows are recorded and parsing goes on, so the reader never blocks and the first failed row is reported
+    private List<Row> parse(CsvColumnPlan plan, BlockingQueue<Row> queue, Map<String, ScheduleRoom> roomsByName,
+                            Map<Integer, RuntimeException> failures) throws InterruptedException {
+        List<Row> parsed = new ArrayList<>();
+        Row row;
+        while ((row = queue.take()) != END) {
+            try {
+                row.appointment = plan.createAppointment(row.values, roomsByName);
+                parsed.add(row);
+            }
+            catch (RuntimeException e) {
+                failures.put(row.number, e);
+            }
+        }
+        return parsed;
+    }
+
+    private static final class Row {
+        private final int number;
+        private final String[] values;
+        private Appointment appointment;
+
+        private Row(int number, String[] values) {
+            this.number = number;
+            this.values = values;
+        }
+    }
+
+}
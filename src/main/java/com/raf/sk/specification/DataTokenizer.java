@@ -0,0 +1,45 @@
+package com.raf.sk.specification;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Splits values of multi-valued data keys, such as groups "101,102", into tokens which are indexed and searched on
+ * their own. The value of any other key is a single token.
+ */
+final class DataTokenizer {
+
+    static final DataTokenizer NONE = new DataTokenizer(new String[0], ",");
+
+    private final Set<String> keys;
+    private final Pattern separator;
+
+    /**
+     * @param keys - Keys whose values are split
+     * @param separator - Separator of the tokens in a value
+     */
+    public DataTokenizer(String[] keys, String separator) {
+        this.keys = Arrays.stream(keys).map(String::trim).filter(key -> !key.isEmpty()).collect(Collectors.toUnmodifiableSet());
+        this.separator = Pattern.compile(Pattern.quote(separator));
+    }
+
+    public boolean isTokenized(String key) {
+        return keys.contains(key);
+    }
+
+    /**
+     * @return - Distinct tokens of the value, trimmed and without empty ones
+     */
+    public List<String> tokens(String key, Object value) {
+        if (!isTokenized(key)) return List.of(String.valueOf(value));
+        return separator.splitAsStream(String.valueOf(value))
+                .map(String::trim)
+                .filter(token -> !token.isEmpty())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.FreeTime;
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Search for time slots in which every participant is free at once: rooms, and people or groups identified by the
+ * additional data of reserved appointments, who must not be booked in any room.
+ * <p>
+ * Reserved appointments of every participant are read as the search moves from date to date: those in progress on
+ * the first date at once, then those starting on each date. They are kept by day of the week, sorted by start, and
+ * dropped after their last occurrence. On every working date the busy intervals of all participants are merged in one
+ * k-way pass, and the gaps between them which last long enough are the common free slots. The search stops reading
+ * and merging as soon as the limit of slots is reached. Each date is read from the schedule as it is then, so a search
+ * running while the schedule changes may see later dates after the change.
+ *
+ * @see Schedule#queryFreeSlots()
+ */
+public final class FreeSlotQuery {
+
+    private final Configuration config;
+    private final Supplier<AppointmentQuery> reserved;
+    private final List<UnaryOperator<AppointmentQuery>> participants = new ArrayList<>();
+
+    private LocalDate firstDate, lastDate;
+    private int startMinute = -1, endMinute = -1;
+    private int duration = 1;
+    private int limit = Integer.MAX_VALUE;
+
+    FreeSlotQuery(Configuration config, Supplier<AppointmentQuery> reserved) {
+        this.config = config;
+        this.reserved = reserved;
+    }
+
+    /**
+     * @param room - Room which must be free
+     * @return - This query
+     */
+    public FreeSlotQuery room(ScheduleRoom room) {
+        participants.add(query -> query.room(room));
+        return this;
+    }
+
+    /**
+     * @param key - Key of the additional data, such as "PROFESSOR"
+     * @param value - Value identifying the participant who must be free in every room
+     * @return - This query
+     */
+    public FreeSlotQuery data(String key, Object value) {
+        participants.add(query -> query.data(key, value));
+        return this;
+    }
+
+    /**
+     * @param key - Key of the additional data, such as "GROUPS"
+     * @param token - Token of the value identifying the participant who must be free in every room
+     * @return - This query
+     */
+    public FreeSlotQuery token(String key, String token) {
+        participants.add(query -> query.token(key, token));
+        return this;
+    }
+
+    /**
+     * Searches the dates between the given dates, both inclusive. By default the whole period of the schedule.
+     *
+     * @param firstDate - First date searched
+     * @param lastDate - Last date searched
+     * @return - This query
+     */
+    public FreeSlotQuery dates(LocalDate firstDate, LocalDate lastDate) {
+        this.firstDate = firstDate;
+        this.lastDate = lastDate;
+        return this;
+    }
+
+    /**
+     * Searches the time window on every date, within the working time of the schedule. By default the whole working
+     * time.
+     *
+     * @param startTime - Start of the time window
+     * @param endTime - End of the time window
+     * @return - This query
+     */
+    public FreeSlotQuery during(String startTime, String endTime) {
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = Time.toMinutes(endTime);
+        return this;
+    }
+
+    /**
+     * @param duration - Least length of a slot
+     * @return - This query
+     */
+    public FreeSlotQuery lasting(String duration) {
+        this.duration = Math.max(1, Time.toMinutes(duration));
+        return this;
+    }
+
+    /**
+     * @param limit - Most slots found, the search stops once it has found them
+     * @return - This query
+     */
+    public FreeSlotQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * @return - The longest slots in which every participant is free, lasting at least the duration, by date and time
+     */
+    public List<FreeTime> list() {
+        LocalDate first = (firstDate != null) ? firstDate : config.getStartDate();
+        LocalDate last = (lastDate != null) ? lastDate : config.getEndDate();
+        int workStart = config.getWorkingCalendar().getWorkStart();
+        int workEnd = config.getWorkingCalendar().getWorkEnd();
+        int windowStart = Math.max(startMinute, workStart);
+        int windowEnd = (endMinute >= 0) ? Math.min(endMinute, workEnd) : workEnd;
+
+        List<Participant> busy = new ArrayList<>();
+        for (UnaryOperator<AppointmentQuery> constraint : participants) {
+            Participant participant = new Participant(constraint);
+            participant.read(constraint.apply(reserved.get()).between(first.minusDays(1), first));
+            busy.add(participant);
+        }
+
+        WorkingCalendar calendar = config.getWorkingCalendar();
+        List<FreeTime> slots = new ArrayList<>();
+        for (LocalDate date = first; !date.isAfter(last) && slots.size() < limit; date = date.plusDays(1)) {
+            // appointments starting on a free day may still recur on working days
+            for (Participant participant : busy) participant.read(participant.constraint.apply(reserved.get()).date(date));
+            if (!calendar.isWorkingDay(date)) continue;
+            Day day = ScheduleUtils.getInstance().getDayFromDate(date);
+
+            PriorityQueue<Cursor> heads = new PriorityQueue<>(Comparator.comparingInt(cursor -> cursor.current.getStartMinute()));
+            for (Participant participant : busy) {
+                Cursor cursor = new Cursor(participant.on(date, day));
+                if (cursor.advance()) heads.add(cursor);
+            }
+
+            int free = windowStart;
+            while (!heads.isEmpty() && slots.size() < limit) {
+                Cursor cursor = heads.poll();
+                int start = cursor.current.getStartMinute();
+                if (start >= windowEnd) break;
+                if (start - free >= duration) slots.add(new FreeTime(day, free, start, date));
+                free = Math.max(free, cursor.current.getEndMinute());
+                if (cursor.advance()) heads.add(cursor);
+            }
+            if (windowEnd - free >= duration && slots.size() < limit) slots.add(new FreeTime(day, free, windowEnd, date));
+        }
+        return slots;
+    }
+
+    // Busy intervals of one participant which started by the last date read, by day of the week in the order of their
+    // start, until their last occurrence has passed
+    private static final class Participant {
+        private static final Comparator<Busy> BY_START = Comparator.comparingInt(busy -> busy.time.getStartMinute());
+
+        private final UnaryOperator<AppointmentQuery> constraint;
+        private final Map<Day, List<Busy>> byDay = new EnumMap<>(Day.class);
+
+        private Participant(UnaryOperator<AppointmentQuery> constraint) {
+            this.constraint = constraint;
+        }
+
+        private void read(AppointmentQuery query) {
+            query.stream().map(Appointment::getTime).filter(time -> time.getDay() != null).forEach(time -> {
+                Busy busy = new Busy(time, RecurrenceRule.of(time));
+                if (busy.rule.isEmpty()) return;
+                List<Busy> intervals = byDay.computeIfAbsent(time.getDay(), day -> new ArrayList<>());
+                int index = Collections.binarySearch(intervals, busy, BY_START);
+                intervals.add((index < 0) ? -index - 1 : index, busy);
+            });
+        }
+
+        // Intervals recurring on the date, dates must be asked in order as passed intervals are dropped
+        private List<Time<LocalDate>> on(LocalDate date, Day day) {
+            List<Busy> intervals = byDay.get(day);
+            if (intervals == null) return List.of();
+            long epochDay = date.toEpochDay();
+            intervals.removeIf(busy -> busy.rule.getLast() < epochDay);
+            List<Time<LocalDate>> times = new ArrayList<>();
+            for (Busy busy : intervals) {
+                if (busy.rule.occursOn(date)) times.add(busy.time);
+            }
+            return times;
+        }
+    }
+
+    private static final class Busy {
+        private final Time<LocalDate> time;
+        private final RecurrenceRule rule;
+
+        private Busy(Time<LocalDate> time, RecurrenceRule rule) {
+            this.time = time;
+            this.rule = rule;
+        }
+    }
+
+    // Busy intervals of one participant on one date, in the order of their start
+    private static final class Cursor {
+        private final List<Time<LocalDate>> times;
+        private int next;
+        private Time<LocalDate> current;
+
+        private Cursor(List<Time<LocalDate>> times) {
+            this.times = times;
+        }
+
+        // Moves to the next interval, false if there is none
+        private boolean advance() {
+            if (next >= times.size()) return false;
+            current = times.get(next++);
+            return true;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.FreeTime;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Computes free appointments on demand for the {@link FreeTimeMode#LAZY} mode.
+ * <p>
+ * Free appointments of a room on a working day are the gaps between its reserved appointments within the working time
+ * from the configuration. Nothing is stored, so construction cost and memory do not depend on the schedule horizon.
+ */
+final class FreeTimeComplement {
+
+    private final Configuration config;
+    private final WorkingCalendar calendar;
+    private final ReservationIndex reservationIndex;
+    private final int workStart, workEnd;
+
+    public FreeTimeComplement(Configuration config, ReservationIndex reservationIndex) {
+        this.config = config;
+        this.calendar = config.getWorkingCalendar();
+        this.reservationIndex = reservationIndex;
+        this.workStart = calendar.getWorkStart();
+        this.workEnd = calendar.getWorkEnd();
+    }
+
+    /**
+     * Streams free appointments of the given rooms between two dates, both inclusive.
+     * Dates outside the configured period are ignored.
+     *
+     * @param rooms - Rooms to be searched, in result order
+     * @param from - First date
+     * @param to - Last date
+     * @return - Lazily computed free appointments, ordered by room and date
+     */
+    public Stream<Appointment> stream(List<ScheduleRoom> rooms, LocalDate from, LocalDate to) {
+        LocalDate first = from.isBefore(config.getStartDate()) ? config.getStartDate() : from;
+        LocalDate last = to.isAfter(config.getEndDate()) ? config.getEndDate() : to;
+        if (first.isAfter(last)) return Stream.empty();
+        return rooms.stream().flatMap(room -> first.datesUntil(last.plusDays(1))
+                .filter(calendar::isWorkingDay)
+                .flatMap(date -> freeAppointmentsOn(room, date).stream()));
+    }
+
+    public Stream<Appointment> stream(List<ScheduleRoom> rooms) {
+        return stream(rooms, config.getStartDate(), config.getEndDate());
+    }
+
+    /**
+     * Computes free appointments of a room on a single day.
+     *
+     * @param room - Room to be searched
+     * @param date - Working day to be searched
+     * @return - Free appointments ordered by start time
+     */
+    public List<Appointment> freeAppointmentsOn(ScheduleRoom room, LocalDate date) {
+        List<int[]> reserved = new ArrayList<>();
+        reservationIndex.forEachOn(room, date, appointment -> {
+            int start = Math.max(appointment.getTime().getStartMinute(), workStart);
+            int end = Math.min(appointment.getTime().getEndMinute(), workEnd);
+            if (start < end) reserved.add(new int[]{start, end});
+        });
+
+        int[][] intervals = reserved.toArray(new int[0][]);
+        Arrays.sort(intervals, (i1, i2) -> Integer.compare(i1[0], i2[0]));
+
+        List<Appointment> free = new ArrayList<>();
+        int cursor = workStart;
+        for (int[] interval : intervals) {
+            if (interval[0] > cursor) free.add(createFreeAppointment(room, date, cursor, interval[0]));
+            cursor = Math.max(cursor, interval[1]);
+        }
+        if (cursor < workEnd) free.add(createFreeAppointment(room, date, cursor, workEnd));
+        return free;
+    }
+
+    private Appointment createFreeAppointment(ScheduleRoom room, LocalDate date, int start, int end) {
+        FreeTime time = new FreeTime(ScheduleUtils.getInstance().getDayFromDate(date), start, end, date);
+        return new Appointment(time, room);
+    }
+
+}
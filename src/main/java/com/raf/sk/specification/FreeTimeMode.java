@@ -0,0 +1,13 @@
+package com.raf.sk.specification;
+
+/**
+ * Strategy used by the schedule for free appointments.
+ * <p>
+ * MATERIALIZED keeps one free appointment per room and working day from the start and divides or merges them
+ * on every booking. LAZY stores nothing and computes free appointments on demand as the complement
+ * of the reserved appointments against the working calendar.
+ */
+enum FreeTimeMode {
+    MATERIALIZED,
+    LAZY
+}
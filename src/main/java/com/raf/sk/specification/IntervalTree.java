@@ -0,0 +1,180 @@
+package com.raf.sk.specification;
+
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Augmented AVL tree of closed integer intervals.
+ * <p>
+ * Nodes are ordered by the low end of the interval and every node keeps the highest end found in its subtree,
+ * so all intervals overlapping a query range are found in O(log n + k). Several intervals with equal bounds
+ * may be stored, they are kept apart by insertion order.
+ *
+ * @param <V> the type of values attached to intervals
+ */
+final class IntervalTree<V> {
+
+    private Node<V> root;
+    private long sequence;
+    private int size;
+
+    public void insert(int low, int high, V value) {
+        root = insert(root, new Node<>(low, high, sequence++, value));
+        size++;
+    }
+
+    /**
+     * Removes one interval with the given bounds whose value is equal to the given value.
+     *
+     * @return - True if an interval was removed
+     */
+    public boolean remove(int low, int high, V value) {
+        Node<V> node = find(root, low, high, value);
+        if (node == null) return false;
+        root = remove(root, node.low, node.seq);
+        size--;
+        return true;
+    }
+
+    /**
+     * Checks whether any interval overlapping [low, high] carries a value matching the predicate.
+     * The search stops at the first match.
+     */
+    public boolean anyOverlapping(int low, int high, Predicate<V> predicate) {
+        return anyOverlapping(root, low, high, predicate);
+    }
+
+    public void forEachOverlapping(int low, int high, Consumer<V> action) {
+        anyOverlapping(root, low, high, value -> {
+            action.accept(value);
+            return false;
+        });
+    }
+
+    public void forEach(Consumer<V> action) {
+        forEachOverlapping(Integer.MIN_VALUE, Integer.MAX_VALUE, action);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Search
+    private boolean anyOverlapping(Node<V> node, int low, int high, Predicate<V> predicate) {
+        if (node == null || node.maxHigh < low) return false;
+        if (anyOverlapping(node.left, low, high, predicate)) return true;
+        if (node.low > high) return false;
+        if (node.high >= low && predicate.test(node.value)) return true;
+        return anyOverlapping(node.right, low, high, predicate);
+    }
+
+    private Node<V> find(Node<V> node, int low, int high, V value) {
+        if (node == null) return null;
+        if (low < node.low) return find(node.left, low, high, value);
+        if (low > node.low) return find(node.right, low, high, value);
+        if (node.high == high && node.value.equals(value)) return node;
+        Node<V> found = find(node.left, low, high, value);
+        return (found != null) ? found : find(node.right, low, high, value);
+    }
+
+    // Structure
+    private Node<V> insert(Node<V> node, Node<V> added) {
+        if (node == null) return added;
+        if (compare(added.low, added.seq, node) < 0) node.left = insert(node.left, added);
+        else node.right = insert(node.right, added);
+        return balance(node);
+    }
+
+    private Node<V> remove(Node<V> node, int low, long seq) {
+        if (node == null) return null;
+        int cmp = compare(low, seq, node);
+        if (cmp < 0) node.left = remove(node.left, low, seq);
+        else if (cmp > 0) node.right = remove(node.right, low, seq);
+        else {
+            if (node.left == null) return node.right;
+            if (node.right == null) return node.left;
+            Node<V> successor = node.right;
+            while (successor.left != null) successor = successor.left;
+            successor.right = removeMin(node.right);
+            successor.left = node.left;
+            return balance(successor);
+        }
+        return balance(node);
+    }
+
+    private Node<V> removeMin(Node<V> node) {
+        if (node.left == null) return node.right;
+        node.left = removeMin(node.left);
+        return balance(node);
+    }
+
+    private int compare(int low, long seq, Node<V> node) {
+        if (low != node.low) return Integer.compare(low, node.low);
+        return Long.compare(seq, node.seq);
+    }
+
+    private Node<V> balance(Node<V> node) {
+        update(node);
+        int factor = height(node.left) - height(node.right);
+        if (factor > 1) {
+            if (height(node.left.left) < height(node.left.right)) node.left = rotateLeft(node.left);
+            return rotateRight(node);
+        }
+        if (factor < -1) {
+            if (height(node.right.right) < height(node.right.left)) node.right = rotateRight(node.right);
+            return rotateLeft(node);
+        }
+        return node;
+    }
+
+    private Node<V> rotateLeft(Node<V> node) {
+        Node<V> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node<V> rotateRight(Node<V> node) {
+        Node<V> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private void update(Node<V> node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+        node.maxHigh = node.high;
+        if (node.left != null) node.maxHigh = Math.max(node.maxHigh, node.left.maxHigh);
+        if (node.right != null) node.maxHigh = Math.max(node.maxHigh, node.right.maxHigh);
+    }
+
+    private int height(Node<V> node) {
+        return (node == null) ? 0 : node.height;
+    }
+
+    private static final class Node<V> {
+        private final int low, high;
+        private final long seq;
+        private final V value;
+        private int maxHigh;
+        private int height = 1;
+        private Node<V> left, right;
+
+        private Node(int low, int high, long seq, V value) {
+            this.low = low;
+            this.high = high;
+            this.seq = seq;
+            this.value = value;
+            this.maxHigh = high;
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+package com.raf.sk.specification;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.adapter.TimeAdapter;
+import com.raf.sk.specification.model.time.ReservedTime;
+import com.raf.sk.specification.model.time.Time;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming reader of JSON appointments.
+ * <p>
+ * Reads both the array written by {@link ScheduleUtils#saveToJSON} and the compact layout written by
+ * {@link CompactJsonWriter}, the layout is recognized by the first token. Appointments are decoded one element
+ * at a time, so only the current element is held in memory besides the appointments already returned. Rooms are
+ * resolved by name to the instances in the given map, rooms missing from it are decoded once and added.
+ */
+final class JsonAppointmentReader implements Closeable {
+
+    private static final Type DATA_TYPE = new TypeToken<Map<String, Object>>(){}.getType();
+
+    private final JsonReader reader;
+    private final Map<String, ScheduleRoom> roomsByName;
+    private final Gson gson = new Gson();
+    private final TimeAdapter timeAdapter = new TimeAdapter();
+    private final List<ScheduleRoom> roomTable = new ArrayList<>();
+    private final List<String> stringTable = new ArrayList<>();
+    private boolean started, finished, compact;
+
+    public JsonAppointmentReader(Reader reader, Map<String, ScheduleRoom> roomsByName) {
+        this.reader = new JsonReader(reader);
+        this.roomsByName = roomsByName;
+    }
+
+    /**
+     * Reads the next appointment, null elements are skipped.
+     *
+     * @return - Next appointment or null at the end of the array
+     */
+    public Appointment next() throws IOException {
+        if (finished) return null;
+        if (!started) {
+            compact = reader.peek() == JsonToken.BEGIN_OBJECT;
+            if (compact) readHeader();
+            else reader.beginArray();
+            started = true;
+        }
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.NULL) return (compact) ? readCompactAppointment() : readAppointment();
+            reader.nextNull();
+        }
+        reader.endArray();
+        if (compact) readTrailer();
+        finished = true;
+        return null;
+    }
+
+    // Reads the tables of the compact layout up to the start of the appointments array
+    private void readHeader() throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            switch (name) {
+                case "version":
+                    int version = reader.nextInt();
+                    if (version > CompactJsonWriter.VERSION) throw new IOException("Unsupported schedule version " + version);
+                    break;
+                case "rooms":
+                    reader.beginArray();
+                    while (reader.hasNext()) roomTable.add(readRoom());
+                    reader.endArray();
+                    break;
+                case "strings":
+                    reader.beginArray();
+                    while (reader.hasNext()) stringTable.add(reader.nextString());
+                    reader.endArray();
+                    break;
+                case "appointments":
+                    reader.beginArray();
+                    return;
+                default:
+                    reader.skipValue();
+            }
+        }
+        throw new IOException("Schedule has no appointments");
+    }
+
+    private void readTrailer() throws IOException {
+        while (reader.hasNext()) {
+            reader.nextName();
+            reader.skipValue();
+        }
+        reader.endObject();
+    }
+
+    private Appointment readCompactAppointment() throws IOException {
+        reader.beginArray();
+        ScheduleRoom scheduleRoom = roomTable.get(reader.nextInt());
+        Day day = Day.valueOf(reader.nextString());
+        String startTime = reader.nextString();
+        String endTime = reader.nextString();
+        LocalDate startDate = LocalDate.parse(reader.nextString());
+        LocalDate endDate = LocalDate.parse(reader.nextString());
+        Map<String, Object> data = readCompactData();
+        reader.endArray();
+        return new Appointment(new ReservedTime(day, startTime, endTime, startDate, endDate), scheduleRoom, data);
+    }
+
+    private Map<String, Object> readCompactData() throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            if (reader.peek() == JsonToken.NUMBER) data.put(key, stringTable.get(reader.nextInt()));
+            else {
+                reader.beginArray();
+                data.put(key, gson.fromJson(reader, Object.class));
+                reader.endArray();
+            }
+        }
+        reader.endObject();
+        return data;
+    }
+
+    private Appointment readAppointment() throws IOException {
+        Time<LocalDate> time = null;
+        ScheduleRoom scheduleRoom = null;
+        Map<String, Object> data = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "time":
+                    time = timeAdapter.deserialize(JsonParser.parseReader(reader), Time.class, null);
+                    break;
+                case "scheduleRoom":
+                    scheduleRoom = readRoom();
+                    break;
+                case "data":
+                    data = gson.fromJson(reader, DATA_TYPE);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Appointment(time, scheduleRoom, data);
+    }
+
+    private ScheduleRoom readRoom() throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        JsonObject room = JsonParser.parseReader(reader).getAsJsonObject();
+        return roomsByName.computeIfAbsent(room.get("name").getAsString(), name -> gson.fromJson(room, ScheduleRoom.class));
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+}
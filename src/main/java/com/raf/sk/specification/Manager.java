@@ -2,7 +2,7 @@ package com.raf.sk.specification;
 
 public final class Manager {
 
-    private static Schedule schedule;
+    private static volatile Schedule schedule;
 
     public static void setSchedule(Schedule s) {
         schedule = s;
@@ -0,0 +1,140 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Slot occupancy bitmaps of every room for every day of the configured period.
+ * <p>
+ * Working time is split into slots of fixed length and a day of a room is a row of bits, one per slot, set when any
+ * reserved appointment touches the slot. Marking a weekly appointment ORs one precomputed mask into every seventh day,
+ * and checking a window reads a few words. Only windows whose edges fall into a partially used slot are resolved
+ * against the exact reservations.
+ */
+final class OccupancyCalendar {
+
+    private final LocalDate startDate;
+    private final int days;
+    private final int workStart, workEnd;
+    private final int slotMinutes, slots, words;
+
+    private final Map<String, long[][]> rooms = new ConcurrentHashMap<>();
+
+    public OccupancyCalendar(Configuration config) {
+        this.startDate = config.getStartDate();
+        this.days = (int) ChronoUnit.DAYS.between(config.getStartDate(), config.getEndDate()) + 1;
+        this.workStart = Time.toMinutes(config.getWorkingTime()[0]);
+        this.workEnd = Time.toMinutes(config.getWorkingTime()[1]);
+        this.slotMinutes = config.getSlotMinutes();
+        this.slots = Math.max(0, (workEnd - workStart + slotMinutes - 1) / slotMinutes);
+        this.words = (slots + 63) / 64;
+    }
+
+    /**
+     * Marks slots of the appointment on every date of its range that falls on its day.
+     */
+    public void reserve(Appointment appointment) {
+        long[] mask = mask(appointment.getTime().getStartMinute(), appointment.getTime().getEndMinute());
+        if (mask == null) return;
+        long[][] room = rooms.computeIfAbsent(appointment.getScheduleRoom().getName(), name -> new long[days][]);
+        forEachDay(appointment, dayIndex -> {
+            if (room[dayIndex] == null) room[dayIndex] = new long[words];
+            for (int w = 0; w < words; w++) room[dayIndex][w] |= mask[w];
+        });
+    }
+
+    /**
+     * Clears slots of a deleted appointment and marks again the slots of the remaining appointments it shared days with.
+     *
+     * @param appointment - Deleted appointment
+     * @param reservationIndex - Index which no longer contains the deleted appointment
+     */
+    public void release(Appointment appointment, ReservationIndex reservationIndex) {
+        long[][] room = rooms.get(appointment.getScheduleRoom().getName());
+        long[] mask = mask(appointment.getTime().getStartMinute(), appointment.getTime().getEndMinute());
+        if (room == null || mask == null) return;
+        forEachDay(appointment, dayIndex -> {
+            if (room[dayIndex] == null) return;
+            for (int w = 0; w < words; w++) room[dayIndex][w] &= ~mask[w];
+        });
+        reservationIndex.forEachTouching(appointment, this::reserve);
+    }
+
+    public void removeRoom(ScheduleRoom scheduleRoom) {
+        rooms.remove(scheduleRoom.getName());
+    }
+
+    /**
+     * Checks whether the room has no reserved appointment overlapping the window on the given date.
+     *
+     * @param room - Room to be checked
+     * @param date - Date to be checked
+     * @param startMinute - Start of the window in minutes since midnight
+     * @param endMinute - End of the window in minutes since midnight
+     * @param reservationIndex - Index used for windows that cannot be decided by slots alone
+     * @return - True if the window is free
+     */
+    public boolean isFree(ScheduleRoom room, LocalDate date, int startMinute, int endMinute, ReservationIndex reservationIndex) {
+        int dayIndex = (int) ChronoUnit.DAYS.between(startDate, date);
+        if (dayIndex < 0 || dayIndex >= days || startMinute < workStart || endMinute > workEnd)
+            return isFreeExactly(room, date, startMinute, endMinute, reservationIndex);
+        if (startMinute >= endMinute) return true;
+
+        long[][] occupancy = rooms.get(room.getName());
+        long[] day = (occupancy == null) ? null : occupancy[dayIndex];
+        if (day == null) return true;
+
+        int first = (startMinute - workStart) / slotMinutes;
+        int last = (endMinute - workStart - 1) / slotMinutes;
+        int innerFirst = ((startMinute - workStart) % slotMinutes == 0) ? first : first + 1;
+        int innerLast = ((endMinute - workStart) % slotMinutes == 0 || endMinute == workEnd) ? last : last - 1;
+
+        if (innerFirst <= innerLast && isAnySet(day, innerFirst, innerLast)) return false;
+        if (!isAnySet(day, first, last)) return true;
+        return isFreeExactly(room, date, startMinute, endMinute, reservationIndex);
+    }
+
+    private boolean isFreeExactly(ScheduleRoom room, LocalDate date, int startMinute, int endMinute, ReservationIndex reservationIndex) {
+        return !reservationIndex.anyMatchOn(room, date, appointment -> appointment.getTime().getStartMinute() < endMinute
+                && appointment.getTime().getEndMinute() > startMinute);
+    }
+
+    private boolean isAnySet(long[] day, int from, int to) {
+        for (int w = from >>> 6; w <= to >>> 6; w++) {
+            long bits = day[w];
+            if (w == from >>> 6) bits &= -1L << (from & 63);
+            if (w == to >>> 6) bits &= -1L >>> (63 - (to & 63));
+            if (bits != 0) return true;
+        }
+        return false;
+    }
+
+    // Slots touched by [startMinute, endMinute), null if none of them lies in the working time
+    private long[] mask(int startMinute, int endMinute) {
+        int start = Math.max(startMinute, workStart), end = Math.min(endMinute, workEnd);
+        if (start >= end) return null;
+        int first = (start - workStart) / slotMinutes;
+        int last = (end - workStart - 1) / slotMinutes;
+        long[] mask = new long[words];
+        for (int w = first >>> 6; w <= last >>> 6; w++) {
+            long bits = -1L;
+            if (w == first >>> 6) bits &= -1L << (first & 63);
+            if (w == last >>> 6) bits &= -1L >>> (63 - (last & 63));
+            mask[w] = bits;
+        }
+        return mask;
+    }
+
+    private void forEachDay(Appointment appointment, IntConsumer action) {
+        long origin = startDate.toEpochDay();
+        RecurrenceRule.of(appointment.getTime()).forEachBetween(origin, origin + days - 1, epochDay -> action.accept((int) (epochDay - origin)));
+    }
+
+}
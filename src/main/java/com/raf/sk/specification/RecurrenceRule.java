@@ -0,0 +1,87 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.util.function.LongConsumer;
+
+/**
+ * Weekly recurrence of a reserved time: its day of the week in every week of its date range.
+ * <p>
+ * Occurrences are an arithmetic progression of epoch days from the first to the last occurrence, so rules are
+ * compared without listing their dates. Rules on the same day of the week meet if the ranges of their occurrences
+ * overlap, while a range which holds no such day, such as Wednesday to Friday on Tuesdays, never meets anything.
+ * Dates are only listed when they are visited.
+ */
+final class RecurrenceRule {
+
+    private static final int WEEK = 7;
+    private static final RecurrenceRule NONE = new RecurrenceRule(1, 0);
+
+    private final long first, last;
+
+    private RecurrenceRule(long first, long last) {
+        this.first = first;
+        this.last = last;
+    }
+
+    /**
+     * Rule of a reserved time. Dates are ordered so that a range given backwards recurs over the same dates.
+     */
+    public static RecurrenceRule of(Time<LocalDate> time) {
+        if (time.getDay() == null || time.getStartDate() == null || time.getEndDate() == null) return NONE;
+        long from = Math.min(time.getStartDate().toEpochDay(), time.getEndDate().toEpochDay());
+        long to = Math.max(time.getStartDate().toEpochDay(), time.getEndDate().toEpochDay());
+        int day = time.getDay().ordinal();
+        long first = from + Math.floorMod(day - dayOf(from), WEEK);
+        long last = to - Math.floorMod(dayOf(to) - day, WEEK);
+        return (first > last) ? NONE : new RecurrenceRule(first, last);
+    }
+
+    // Day of the week of the epoch day, Monday is 0 and 1970-01-01 was a Thursday
+    private static int dayOf(long epochDay) {
+        return Math.floorMod(epochDay + 3, WEEK);
+    }
+
+    public boolean isEmpty() {
+        return first > last;
+    }
+
+    /**
+     * @return - Epoch day of the first occurrence
+     */
+    public long getFirst() {
+        return first;
+    }
+
+    /**
+     * @return - Epoch day of the last occurrence
+     */
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * @return - Whether both rules occur on some date, decided by the phase and the bounds of their occurrences
+     */
+    public boolean intersects(RecurrenceRule other) {
+        if (isEmpty() || other.isEmpty()) return false;
+        if (Math.floorMod(first - other.first, WEEK) != 0) return false;
+        return Math.max(first, other.first) <= Math.min(last, other.last);
+    }
+
+    public boolean occursOn(LocalDate date) {
+        long epochDay = date.toEpochDay();
+        return epochDay >= first && epochDay <= last && Math.floorMod(epochDay - first, WEEK) == 0;
+    }
+
+    /**
+     * Visits epoch days of the occurrences between the given epoch days, both inclusive.
+     */
+    public void forEachBetween(long from, long to, LongConsumer action) {
+        if (isEmpty()) return;
+        long start = Math.max(first, from + Math.floorMod(first - from, WEEK));
+        for (long epochDay = start; epochDay <= Math.min(last, to); epochDay += WEEK) action.accept(epochDay);
+    }
+
+}
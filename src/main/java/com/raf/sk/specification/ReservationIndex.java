@@ -0,0 +1,94 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Index of reserved appointments partitioned by room and day of the week.
+ * <p>
+ * Every partition is an {@link IntervalTree} over the epoch days between the first and the last occurrence of the
+ * {@link RecurrenceRule} of an appointment. Appointments of one partition recur on the same day of the week, so two
+ * of them meet exactly when these intervals overlap, and conflict checks only visit bookings of the target room which
+ * occur on a date of the new one. Appointments whose date range holds no occurrence of their day are not indexed.
+ * Rooms are added concurrently, while the partitions of a room are only changed under the lock of the room.
+ */
+final class ReservationIndex {
+
+    private final Map<String, EnumMap<Day, IntervalTree<Appointment>>> partitions = new ConcurrentHashMap<>();
+
+    public void add(Appointment appointment) {
+        RecurrenceRule rule = RecurrenceRule.of(appointment.getTime());
+        if (rule.isEmpty()) return;
+        partitions.computeIfAbsent(appointment.getScheduleRoom().getName(), name -> new EnumMap<>(Day.class))
+                .computeIfAbsent(appointment.getTime().getDay(), d -> new IntervalTree<>())
+                .insert((int) rule.getFirst(), (int) rule.getLast(), appointment);
+    }
+
+    public void remove(Appointment appointment) {
+        RecurrenceRule rule = RecurrenceRule.of(appointment.getTime());
+        IntervalTree<Appointment> tree = getPartition(appointment.getScheduleRoom(), appointment.getTime().getDay());
+        if (tree != null && !rule.isEmpty()) tree.remove((int) rule.getFirst(), (int) rule.getLast(), appointment);
+    }
+
+    public void removeRoom(ScheduleRoom scheduleRoom) {
+        partitions.remove(scheduleRoom.getName());
+    }
+
+    /**
+     * Checks whether any appointment in the room of the target which occurs on a date of the target matches the given
+     * predicate.
+     *
+     * @param target - Appointment whose room, day and date range are searched
+     * @param predicate - Exact condition evaluated on every candidate
+     * @return - True if at least one candidate matches
+     */
+    public boolean anyMatch(Appointment target, Predicate<Appointment> predicate) {
+        RecurrenceRule rule = RecurrenceRule.of(target.getTime());
+        IntervalTree<Appointment> tree = getPartition(target.getScheduleRoom(), target.getTime().getDay());
+        if (tree == null || rule.isEmpty()) return false;
+        return tree.anyOverlapping((int) rule.getFirst(), (int) rule.getLast(), predicate);
+    }
+
+    public void forEachTouching(Appointment target, Consumer<Appointment> action) {
+        anyMatch(target, appointment -> {
+            action.accept(appointment);
+            return false;
+        });
+    }
+
+    /**
+     * Visits every appointment in the given room whose date range contains the given date and whose day matches it.
+     *
+     * @param scheduleRoom - Room to be searched
+     * @param date - Date to be searched
+     * @param action - Action performed on every appointment found
+     */
+    public void forEachOn(ScheduleRoom scheduleRoom, LocalDate date, Consumer<Appointment> action) {
+        anyMatchOn(scheduleRoom, date, appointment -> {
+            action.accept(appointment);
+            return false;
+        });
+    }
+
+    public boolean anyMatchOn(ScheduleRoom scheduleRoom, LocalDate date, Predicate<Appointment> predicate) {
+        IntervalTree<Appointment> tree = getPartition(scheduleRoom, ScheduleUtils.getInstance().getDayFromDate(date));
+        if (tree == null) return false;
+        int epochDay = (int) date.toEpochDay();
+        return tree.anyOverlapping(epochDay, epochDay, predicate);
+    }
+
+    private IntervalTree<Appointment> getPartition(ScheduleRoom scheduleRoom, Day day) {
+        if (day == null) return null;
+        EnumMap<Day, IntervalTree<Appointment>> byDay = partitions.get(scheduleRoom.getName());
+        return (byDay == null) ? null : byDay.get(day);
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reserved appointments saved as one {@link BinaryScheduleFormat} file per room.
+ * <p>
+ * Rooms whose appointments changed are tracked, so saving again to the same directory rewrites only their files.
+ * Saving may also be left to a write-behind thread which coalesces the changes made within a delay into one save.
+ * A save holds the schedule lock exclusively only to take the changed rooms together with the published snapshot, so
+ * no change is saved half applied, and then writes the rooms of that snapshot without blocking changes. Changed rooms
+ * are tracked under the monitor of this object, as rooms are changed in parallel, and saves are serialized by a
+ * lock of their own. A failed background save keeps its rooms changed and is retried after the delay, the failure is
+ * reported by the next explicit save or by stopping the write-behind.
+ */
+final class RoomPartitions {
+
+    private static final String EXTENSION = ".bin";
+
+    private final ScheduleLocks locks;
+    private final Supplier<AppointmentStore.View> appointments;
+    private final Object saving = new Object();
+    private final Set<String> dirtyRooms = new HashSet<>();
+    private Path directory;
+    private boolean allDirty;
+
+    private ScheduledExecutorService writeBehind;
+    private long delayMillis;
+    private boolean flushScheduled;
+    private IOException failure;
+
+    /**
+     * @param locks - Locks of the schedule
+     * @param appointments - Supplier of the published view of reserved appointments
+     */
+    public RoomPartitions(ScheduleLocks locks, Supplier<AppointmentStore.View> appointments) {
+        this.locks = locks;
+        this.appointments = appointments;
+    }
+
+    /**
+     * Marks the partition of a room as changed.
+     */
+    public synchronized void markDirty(String room) {
+        dirtyRooms.add(room);
+        scheduleFlush();
+    }
+
+    /**
+     * Marks every partition as changed, the next save rewrites the whole directory.
+     */
+    public synchronized void markAllDirty() {
+        allDirty = true;
+        scheduleFlush();
+    }
+
+    private void scheduleFlush() {
+        if (writeBehind != null && !flushScheduled) {
+            flushScheduled = true;
+            writeBehind.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Saves the appointments to the directory. Only changed rooms are written if the previous save went to the same
+     * directory, otherwise every room is written and files of rooms without appointments are deleted. If writing
+     * fails the rooms stay changed, so the next save writes them again.
+     *
+     * @param path - Directory to which the partitions are saved
+     * @throws IOException if writing fails, or if it succeeds after a background save failed
+     */
+    public void save(String path) throws IOException {
+        saveTo(Paths.get(path).toAbsolutePath().normalize());
+        synchronized (this) {
+            rethrowFailure();
+        }
+    }
+
+    private void saveTo(Path target) throws IOException {
+        synchronized (saving) {
+            Files.createDirectories(target);
+            Cut[] cut = new Cut[1];
+            locks.exclusive(() -> cut[0] = cut(target));
+            try {
+                write(target, cut[0]);
+            }
+            catch (IOException | RuntimeException e) {
+                synchronized (this) {
+                    if (cut[0].rooms == null) allDirty = true;
+                    else dirtyRooms.addAll(cut[0].rooms);
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Takes the changed rooms and the view they were published in, must be called while holding the schedule lock
+    // exclusively so no change is between being marked and being published
+    private synchronized Cut cut(Path target) {
+        boolean incremental = target.equals(directory) && !allDirty;
+        Cut cut = new Cut(appointments.get(), incremental ? new HashSet<>(dirtyRooms) : null);
+        directory = target;
+        dirtyRooms.clear();
+        allDirty = false;
+        return cut;
+    }
+
+    private void write(Path target, Cut cut) throws IOException {
+        if (cut.rooms != null) {
+            for (String room : cut.rooms) {
+                List<Appointment> roomAppointments = cut.view.ofRoom(room).collect(Collectors.toList());
+                if (roomAppointments.isEmpty()) Files.deleteIfExists(partitionPath(target, room));
+                else writePartition(target, room, roomAppointments);
+            }
+            return;
+        }
+
+        Map<String, List<Appointment>> byRoom = cut.view.stream()
+                .collect(Collectors.groupingBy(a -> a.getScheduleRoom().getName(), LinkedHashMap::new, Collectors.toList()));
+        for (Map.Entry<String, List<Appointment>> entry : byRoom.entrySet()) writePartition(target, entry.getKey(), entry.getValue());
+        for (String room : listRooms(target)) {
+            if (!byRoom.containsKey(room)) Files.deleteIfExists(partitionPath(target, room));
+        }
+    }
+
+    // Changed rooms, or null for every room, and the view holding their appointments
+    private static final class Cut {
+        private final AppointmentStore.View view;
+        private final Set<String> rooms;
+
+        private Cut(AppointmentStore.View view, Set<String> rooms) {
+            this.view = view;
+            this.rooms = rooms;
+        }
+    }
+
+    /**
+     * Reads the appointments of every partition in the directory.
+     *
+     * @return - Appointments grouped by room, in the order the rooms are listed
+     */
+    public List<Appointment> load(String path, Map<String, ScheduleRoom> roomsByName) throws IOException {
+        Path source = Paths.get(path).toAbsolutePath().normalize();
+        List<Appointment> loaded = new ArrayList<>();
+        BinaryScheduleFormat format = new BinaryScheduleFormat();
+        for (String room : listRooms(source)) loaded.addAll(format.read(partitionPath(source, room).toString(), roomsByName));
+        return loaded;
+    }
+
+    /**
+     * Marks the directory as holding exactly the current appointments, so the next save to it is incremental.
+     */
+    public synchronized void markClean(String path) {
+        directory = Paths.get(path).toAbsolutePath().normalize();
+        dirtyRooms.clear();
+        allDirty = false;
+    }
+
+    /**
+     * Starts saving changed partitions to the directory from a background thread.
+     * The first change schedules a save after the delay and later changes join it.
+     */
+    public void startWriteBehind(String path, long delayMillis) throws IOException {
+        stopWriteBehind();
+        save(path);
+        synchronized (this) {
+            this.delayMillis = delayMillis;
+            this.writeBehind = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "schedule-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Stops the background thread and saves all pending changes.
+     *
+     * @throws IOException if saving the pending changes failed, or if a background save failed before
+     */
+    public void stopWriteBehind() throws IOException {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = writeBehind;
+            writeBehind = null;
+            flushScheduled = false;
+        }
+        if (executor == null) return;
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Path target;
+        synchronized (this) {
+            target = directory;
+        }
+        if (target != null) saveTo(target);
+        synchronized (this) {
+            rethrowFailure();
+        }
+    }
+
+    // Runs without the monitor, which writers in rooms may wait for while the save waits for them
+    private void flush() {
+        Path target;
+        synchronized (this) {
+            flushScheduled = false;
+            if (writeBehind == null || directory == null) return;
+            target = directory;
+        }
+        try {
+            saveTo(target);
+        }
+        catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                if (failure == null) failure = (e instanceof IOException) ? (IOException) e : new IOException(e);
+                scheduleFlush();
+            }
+        }
+    }
+
+    // Reports the first background failure once, must be called while holding the monitor
+    private void rethrowFailure() throws IOException {
+        if (failure == null) return;
+        IOException e = failure;
+        failure = null;
+        throw new IOException("Background save failed", e);
+    }
+
+    // Every partition is written to a temporary file first, so a crash never leaves a partially written room
+    private void writePartition(Path target, String room, List<Appointment> roomAppointments) throws IOException {
+        Path file = partitionPath(target, room);
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        new BinaryScheduleFormat().write(roomAppointments, temporary.toString());
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path partitionPath(Path target, String room) {
+        return target.resolve(URLEncoder.encode(room, StandardCharsets.UTF_8) + EXTENSION);
+    }
+
+    private List<String> listRooms(Path target) throws IOException {
+        if (!Files.isDirectory(target)) return new ArrayList<>();
+        try (Stream<Path> files = Files.list(target)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(EXTENSION))
+                    .sorted()
+                    .map(name -> URLDecoder.decode(name.substring(0, name.length() - EXTENSION.length()), StandardCharsets.UTF_8))
+                    .collect(Collectors.toList());
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Equipment;
+import com.raf.sk.specification.model.ScheduleRoom;
+
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable registry of the rooms of a schedule in the order they were added.
+ * <p>
+ * Rooms are found by name through a hash map of dense ids, which are positions in the list. Ids are transient:
+ * deleting a room moves the rooms after it one position down. Adding or deleting a room creates a new registry, which
+ * costs as much as the number of rooms, as rooms change rarely compared to appointments.
+ * <p>
+ * Ids are also sorted by capacity and, for every kind of equipment, by its amount, so rooms meeting requirements are
+ * found by binary searches. Rooms are indexed with the equipment they have when they are registered.
+ */
+final class RoomRegistry {
+
+    static final RoomRegistry EMPTY = of(new ArrayList<>());
+
+    private final List<ScheduleRoom> rooms;
+    private final Map<String, Integer> ids;
+    private final List<Map<String, Integer>> amounts;
+    private final int[] byCapacity;
+    private final Map<String, int[]> byEquipment;
+
+    private RoomRegistry(List<ScheduleRoom> rooms, Map<String, Integer> ids, List<Map<String, Integer>> amounts) {
+        this.rooms = rooms;
+        this.ids = ids;
+        this.amounts = amounts;
+        this.byCapacity = sorted(ids.values(), id -> rooms.get(id).getCapacity());
+        Map<String, List<Integer>> equipped = new HashMap<>();
+        for (int id = 0; id < amounts.size(); id++) {
+            for (String name : amounts.get(id).keySet()) equipped.computeIfAbsent(name, n -> new ArrayList<>()).add(id);
+        }
+        this.byEquipment = new HashMap<>();
+        equipped.forEach((name, equippedIds) -> byEquipment.put(name, sorted(equippedIds, id -> amount(id, name))));
+    }
+
+    private static RoomRegistry of(List<ScheduleRoom> rooms) {
+        Map<String, Integer> ids = new HashMap<>();
+        List<Map<String, Integer>> amounts = new ArrayList<>();
+        for (int i = 0; i < rooms.size(); i++) {
+            ids.put(rooms.get(i).getName(), i);
+            Map<String, Integer> equipment = new HashMap<>();
+            for (Equipment item : rooms.get(i).getEquipment()) equipment.merge(item.getName(), item.getAmount(), Integer::sum);
+            amounts.add(equipment);
+        }
+        return new RoomRegistry(Collections.unmodifiableList(rooms), ids, amounts);
+    }
+
+    // Ids sorted by the value, ties in the order of ids
+    private static int[] sorted(Collection<Integer> ids, IntUnaryOperator value) {
+        return ids.stream().sorted(Comparator.comparingInt(value::applyAsInt).thenComparingInt(id -> id)).mapToInt(id -> id).toArray();
+    }
+
+    // Position of the first id whose value is at least the least value, ids are sorted by the value
+    private static int firstAtLeast(int[] ids, IntUnaryOperator value, int least) {
+        int low = 0, high = ids.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (value.applyAsInt(ids[middle]) < least) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return - Registry with the rooms added after these, rooms with names already registered are skipped
+     */
+    public RoomRegistry withAll(Collection<ScheduleRoom> added) {
+        List<ScheduleRoom> changed = new ArrayList<>(rooms);
+        Set<String> names = new HashSet<>(ids.keySet());
+        for (ScheduleRoom room : added) {
+            if (names.add(room.getName())) changed.add(room);
+        }
+        return (changed.size() == rooms.size()) ? this : of(changed);
+    }
+
+    public RoomRegistry with(ScheduleRoom room) {
+        return withAll(List.of(room));
+    }
+
+    /**
+     * @return - Registry without the room of the same name, or this one if there is no such room
+     */
+    public RoomRegistry without(ScheduleRoom room) {
+        int id = id(room.getName());
+        if (id < 0) return this;
+        List<ScheduleRoom> changed = new ArrayList<>(rooms);
+        changed.remove(id);
+        return of(changed);
+    }
+
+    /**
+     * @return - Id of the room with the name, or -1 if there is no such room
+     */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @return - Room with the name, or null if there is no such room
+     */
+    public ScheduleRoom get(String name) {
+        int id = id(name);
+        return (id < 0) ? null : rooms.get(id);
+    }
+
+    /**
+     * Finds rooms with at least the capacity and the amounts of equipment of the requirements, the best fitting rooms
+     * first: the least spare capacity, then the least spare equipment, then in the order of ids.
+     */
+    public List<ScheduleRoom> find(RoomRequirements requirements) {
+        BitSet found = new BitSet(rooms.size());
+        for (int i = firstAtLeast(byCapacity, id -> rooms.get(id).getCapacity(), requirements.getCapacity()); i < byCapacity.length; i++)
+            found.set(byCapacity[i]);
+        for (Map.Entry<String, Integer> required : requirements.getEquipment().entrySet()) {
+            int[] equipped = byEquipment.getOrDefault(required.getKey(), new int[0]);
+            BitSet enough = new BitSet(rooms.size());
+            for (int i = firstAtLeast(equipped, id -> amount(id, required.getKey()), required.getValue()); i < equipped.length; i++)
+                enough.set(equipped[i]);
+            found.and(enough);
+        }
+        return found.stream().boxed()
+                .sorted(Comparator.comparingInt((Integer id) -> rooms.get(id).getCapacity())
+                        .thenComparingInt(id -> spareEquipment(id, requirements))
+                        .thenComparingInt(id -> id))
+                .map(rooms::get)
+                .collect(Collectors.toList());
+    }
+
+    private int amount(int id, String equipment) {
+        return amounts.get(id).getOrDefault(equipment, 0);
+    }
+
+    private int spareEquipment(int id, RoomRequirements requirements) {
+        int spare = 0;
+        for (Map.Entry<String, Integer> required : requirements.getEquipment().entrySet()) spare += amount(id, required.getKey()) - required.getValue();
+        return spare;
+    }
+
+    public boolean contains(ScheduleRoom room) {
+        return ids.containsKey(room.getName());
+    }
+
+    /**
+     * @return - Unmodifiable list of the rooms, a room is at the position of its id
+     */
+    public List<ScheduleRoom> list() {
+        return rooms;
+    }
+
+    /**
+     * @return - New modifiable map of the rooms by name, for loads which add the rooms they do not find
+     */
+    public Map<String, ScheduleRoom> toMap() {
+        Map<String, ScheduleRoom> byName = new HashMap<>();
+        rooms.forEach(room -> byName.put(room.getName(), room));
+        return byName;
+    }
+
+}
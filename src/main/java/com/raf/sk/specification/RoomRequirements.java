@@ -0,0 +1,43 @@
+package com.raf.sk.specification;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Capacity and equipment a room must have to be found by {@link Schedule#findRoomsFor}.
+ */
+public final class RoomRequirements {
+
+    private int capacity;
+    private final Map<String, Integer> equipment = new LinkedHashMap<>();
+
+    /**
+     * @param capacity - Least capacity of the room
+     * @return - These requirements
+     */
+    public RoomRequirements capacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * @param name - Name of the equipment
+     * @param amount - Least amount of the equipment in the room
+     * @return - These requirements
+     */
+    public RoomRequirements equipment(String name, int amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Amount of equipment must be positive");
+        equipment.put(name, amount);
+        return this;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Map<String, Integer> getEquipment() {
+        return Collections.unmodifiableMap(equipment);
+    }
+
+}
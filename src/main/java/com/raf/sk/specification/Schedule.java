@@ -1,21 +1,29 @@
 package com.raf.sk.specification;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import com.opencsv.CSVReader;
 import com.raf.sk.specification.exception.*;
 import com.raf.sk.specification.model.*;
 import com.raf.sk.specification.model.time.FreeTime;
 import com.raf.sk.specification.model.time.ReservedTime;
 import com.raf.sk.specification.model.time.Time;
-import com.raf.sk.specification.model.adapter.TimeAdapter;
 
+import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Interface for managing schedule of appointments.
@@ -23,16 +31,55 @@ import java.util.stream.Collectors;
  * The schedule contains appointments in two dimensions, time and space, and each appointment may have associated data.
  * Appointments can be added, deleted, moved, and searched according to various criteria.
  * The schedule can be loaded from and saved to various file formats.
+ * The schedule may be shared between threads. Every room has its own lock, so appointments of different rooms are
+ * changed in parallel, while changes of rooms and loading lock the whole schedule. Every change publishes an immutable
+ * snapshot of the schedule, which searches and the getters read without locking.
  *
  */
 @SuppressWarnings("unused")
 public abstract class Schedule {
 
+    // Appointments of a JSON file which are checked and added together
+    private static final int JSON_BATCH = 1024;
+
     private Configuration config;
+    private Properties properties;
+
+    private AppointmentStore reservedAppointments;
+    private AppointmentStore freeAppointments;
+    private volatile RoomRegistry rooms;
+
+    private ReservationIndex reservationIndex;
+    private FreeTimeComplement freeTimeComplement;
+    private OccupancyCalendar occupancyCalendar;
+    private DataTokenizer tokenizer = DataTokenizer.NONE;
+    private final ScheduleObject.DataListener dataListener = this::dataChanged;
+
+    // Read-only view of the current registry, iterating the rooms registered when the iteration starts
+    private final List<ScheduleRoom> roomList = new AbstractList<>() {
+        @Override
+        public ScheduleRoom get(int index) {
+            return rooms.list().get(index);
+        }
+
+        @Override
+        public int size() {
+            return rooms.list().size();
+        }
 
-    private List<Appointment> reservedAppointments;
-    private List<Appointment> freeAppointments;
-    private List<ScheduleRoom> rooms;
+        @Override
+        public Iterator<ScheduleRoom> iterator() {
+            return rooms.list().iterator();
+        }
+    };
+
+    private volatile ScheduleJournal journal;
+    private String checkpointPath;
+    private final AtomicLong journalSequence = new AtomicLong();
+
+    private final AtomicReference<ScheduleSnapshot> snapshot = new AtomicReference<>(ScheduleSnapshot.EMPTY);
+    private final ScheduleLocks locks = new ScheduleLocks(this::publish);
+    private final RoomPartitions partitions = new RoomPartitions(locks, () -> snapshot.get().getReservedAppointments());
 
     /**
      * Default constructor for initializing the schedule. Creates empty lists for appointments and rooms.
@@ -64,63 +111,70 @@ public abstract class Schedule {
      * roomData = "???"
      * csvHeader = "${ON/OFF}"
      * columns = "${column1},${column2},..."
+     * freeTimeMode = "${MATERIALIZED/LAZY}" (optional, MATERIALIZED by default)
+     * slotMinutes = "${minutes}" (optional, 15 by default)
+     * journalSyncRecords = "${records}" (optional, 32 by default)
+     * journalCompactRecords = "${records}" (optional, 10000 by default)
      *
      * @param properties - Schedule configuration file
      */
     public void initSchedule(Properties properties) {
-        this.reservedAppointments = new ArrayList<>();
-        this.freeAppointments = new ArrayList<>();
-        this.rooms = new ArrayList<>();
+        locks.exclusive(() -> resetSchedule(properties));
+    }
+
+    private void resetSchedule(Properties properties) {
+        this.reservedAppointments = new AppointmentStore(Time::getStartDate, DataTokenizer.NONE);
+        this.freeAppointments = new AppointmentStore(Time::getDate);
+        this.rooms = RoomRegistry.EMPTY;
+        this.reservationIndex = new ReservationIndex();
+        this.freeTimeComplement = null;
+        this.occupancyCalendar = null;
+        this.journalSequence.set(0);
+        partitions.markAllDirty();
         if (properties != null) extractConfigurationData(properties);
     }
 
     private void extractConfigurationData(Properties properties){
-        this.config = ScheduleUtils.getInstance().loadConfiguration(properties);
+        applyConfig(properties);
+
+        Map<String, List<String[]>> equipmentByRoom = new HashMap<>();
+        for (String equipment : config.getEquipment()) {
+            String[] data = equipment.split("-");
+            equipmentByRoom.computeIfAbsent(data[0], name -> new ArrayList<>()).add(data);
+        }
 
-        Arrays.stream(config.getRooms()).forEach(this::initFreeRoom);
+        // Rooms and their free appointments are built on the common fork-join pool, the first of rooms with the same
+        // name is kept and free appointments are merged room after room in the order of the configuration
+        List<ScheduleRoom> parsed = Arrays.stream(config.getRooms()).parallel()
+                .filter(room -> !room.isEmpty())
+                .map(room -> initRoom(room, equipmentByRoom))
+                .collect(Collectors.toList());
+        rooms = rooms.withAll(parsed);
+        if (isLazyFreeTime()) return;
+        WorkingCalendar calendar = config.getWorkingCalendar();
+        freeAppointments.addRooms(rooms.list().parallelStream().map(room -> freeAppointmentsOf(room, calendar)).collect(Collectors.toList()));
     }
 
-    private void initFreeRoom(String room) {
-        if (room.isEmpty()) return;
+    private ScheduleRoom initRoom(String room, Map<String, List<String[]>> equipmentByRoom) {
         String[] roomInfo = room.split("-");
         ScheduleRoom scheduleRoom = new ScheduleRoom(roomInfo[0], Integer.parseInt(roomInfo[1]));
-
-        Arrays.stream(config.getEquipment())
-                .map(s -> s.split("-"))
-                .filter(data -> data[0].equals(roomInfo[0]))
+        equipmentByRoom.getOrDefault(roomInfo[0], List.of())
                 .forEach(data -> scheduleRoom.addEquipment(new Equipment(data[1], Integer.parseInt(data[2]))));
-
-        rooms.add(scheduleRoom);
-        initFreeAppointments(scheduleRoom);
+        return scheduleRoom;
     }
 
     private void initFreeAppointments(ScheduleRoom scheduleRoom) {
-        LocalDate currentDate = config.getStartDate();
-        while (!currentDate.isAfter(config.getEndDate())) {
-            Day day = ScheduleUtils.getInstance().getDayFromDate(currentDate);
-
-            if (Arrays.asList(config.getFreeDays()).contains(day)) {
-                currentDate = currentDate.plusDays(1);
-                continue;
-            }
-
-            boolean isHoliday = false;
-            for (String holiday : config.getHolidays()) {
-                holiday = currentDate.getYear() + "-" + holiday;
-                LocalDate holidayDate = LocalDate.parse(holiday);
-                if (holidayDate.equals(currentDate)) {
-                    currentDate = currentDate.plusDays(1);
-                    isHoliday = true;
-                }
-            }
+        if (isLazyFreeTime()) return;
+        freeAppointmentsOf(scheduleRoom, config.getWorkingCalendar()).forEach(freeAppointments::add);
+    }
 
-            if (isHoliday) continue;
-            String[] workingTime = config.getWorkingTime();
-            FreeTime time = new FreeTime(day, workingTime[0], workingTime[1], currentDate);
-            Appointment appointment = new Appointment(time, scheduleRoom);
-            freeAppointments.add(appointment);
-            currentDate = currentDate.plusDays(1);
+    private static List<Appointment> freeAppointmentsOf(ScheduleRoom scheduleRoom, WorkingCalendar calendar) {
+        List<Appointment> appointments = new ArrayList<>(calendar.getWorkingDays().size());
+        for (LocalDate date : calendar.getWorkingDays()) {
+            FreeTime time = new FreeTime(ScheduleUtils.getInstance().getDayFromDate(date), calendar.getWorkStart(), calendar.getWorkEnd(), date);
+            appointments.add(new Appointment(time, scheduleRoom));
         }
+        return appointments;
     }
 
     /**
@@ -129,10 +183,16 @@ public abstract class Schedule {
      * @param scheduleRoom - Room to be added to the schedule
      */
     public void addRoom(ScheduleRoom scheduleRoom) {
-        if (this.rooms == null || scheduleRoom == null) return;
-        if (this.rooms.contains(scheduleRoom)) throw new RoomAlreadyExists("Room already exists");
-        this.rooms.add(scheduleRoom);
-        initFreeAppointments(scheduleRoom);
+        if (scheduleRoom == null) return;
+        locks.exclusive(() -> {
+            if (this.rooms.contains(scheduleRoom)) throw new RoomAlreadyExists("Room already exists");
+            long sequence = journal(journal -> journal.appendAddRoom(scheduleRoom));
+            this.rooms = rooms.with(scheduleRoom);
+            initFreeAppointments(scheduleRoom);
+            journaled(sequence);
+            partitions.markDirty(scheduleRoom.getName());
+        });
+        compactJournalIfFull();
     }
 
     /**
@@ -141,11 +201,19 @@ public abstract class Schedule {
      * @param scheduleRoom - Room to be deleted from the schedule
      */
     public void deleteRoom(ScheduleRoom scheduleRoom) {
-        if (this.rooms == null || scheduleRoom == null) return;
-        if (!this.rooms.contains(scheduleRoom)) throw new RoomNotFoundException("Room not found");
-        this.rooms.remove(scheduleRoom);
-        reservedAppointments.removeIf(appointment -> appointment.getScheduleRoom().equals(scheduleRoom));
-        freeAppointments.removeIf(appointment -> appointment.getScheduleRoom().equals(scheduleRoom));
+        if (scheduleRoom == null) return;
+        locks.exclusive(() -> {
+            if (!this.rooms.contains(scheduleRoom)) throw new RoomNotFoundException("Room not found");
+            long sequence = journal(journal -> journal.appendDeleteRoom(scheduleRoom));
+            this.rooms = rooms.without(scheduleRoom);
+            reservedAppointments.removeRoom(scheduleRoom);
+            reservationIndex.removeRoom(scheduleRoom);
+            if (occupancyCalendar != null) occupancyCalendar.removeRoom(scheduleRoom);
+            freeAppointments.removeRoom(scheduleRoom);
+            journaled(sequence);
+            partitions.markDirty(scheduleRoom.getName());
+        });
+        compactJournalIfFull();
     }
 
     /**
@@ -154,10 +222,9 @@ public abstract class Schedule {
      * @param name - Name of the room to be searched for
      */
     public ScheduleRoom getRoomByName(String name) {
-        return this.rooms.stream()
-                .filter(room -> room.getName().equals(name))
-                .findFirst()
-                .orElseThrow(() -> new RoomNotFoundException("Room not found"));
+        ScheduleRoom room = this.rooms.get(name);
+        if (room == null) throw new RoomNotFoundException("Room not found");
+        return room;
     }
 
     /**
@@ -167,85 +234,266 @@ public abstract class Schedule {
      */
     public void addAppointment(Appointment appointment) {
         if (this.reservedAppointments == null || appointment == null) return;
-        if (isAppointmentFree(appointment)) {
+        locks.writeRooms(List.of(appointment.getScheduleRoom().getName()), () -> {
+            if (isFree(appointment)) insertAppointment(appointment);
+            else throw new AppointmentOverlapException("Appointment cannot be added due overlapping with another appointment");
+        });
+        compactJournalIfFull();
+    }
+
+    // Must be called while holding the lock of the room
+    private void insertAppointment(Appointment appointment) {
+        long sequence = journal(journal -> journal.appendAddAppointment(appointment));
+        appointment.setDataListener(dataListener);
+        this.reservedAppointments.add(appointment);
+        this.reservationIndex.add(appointment);
+        if (occupancyCalendar != null) occupancyCalendar.reserve(appointment);
+        if (!isLazyFreeTime()) divideFreeAppointments(appointment);
+        journaled(sequence);
+        partitions.markDirty(appointment.getScheduleRoom().getName());
+    }
+
+    /**
+     * Adds several appointments to the schedule at once.
+     * <p>
+     * Every appointment is checked against the schedule and against the appointments before it in the collection,
+     * and none of them is added if any overlap is found. Free appointments are then divided once for every room and day.
+     *
+     * @param appointments - Appointments to be added to the schedule
+     * @throws AppointmentOverlapException if any appointment overlaps with an existing or another added appointment
+     */
+    public void addAppointments(Collection<Appointment> appointments) {
+        if (this.reservedAppointments == null || appointments == null) return;
+        List<Appointment> batch = appointments.stream().filter(Objects::nonNull).collect(Collectors.toList());
+        Map<String, List<Appointment>> byRoom = groupByRoom(batch);
+        locks.writeRooms(byRoom.keySet(), () -> insertAppointments(batch, byRoom));
+        compactJournalIfFull();
+    }
+
+    // Must be called while holding the locks of all rooms in the batch
+    private void insertAppointments(List<Appointment> batch, Map<String, List<Appointment>> byRoom) {
+        int conflicts = 0;
+        for (List<Appointment> roomBatch : byRoom.values()) conflicts += findConflicts(roomBatch).size();
+        if (conflicts > 0) throw new AppointmentOverlapException(conflicts + " appointments cannot be added due overlapping with other appointments");
+        commitAppointments(batch);
+    }
+
+    private Map<String, List<Appointment>> groupByRoom(List<Appointment> appointments) {
+        return appointments.stream().collect(Collectors.groupingBy(a -> a.getScheduleRoom().getName(), LinkedHashMap::new, Collectors.toList()));
+    }
+
+    /**
+     * Finds appointments of one room which overlap with the schedule or with an appointment before them in the batch.
+     * Only reads the schedule, so batches of different rooms may be checked in parallel.
+     *
+     * @return - Positions of overlapping appointments in the batch
+     */
+    private List<Integer> findConflicts(List<Appointment> batch) {
+        ReservationIndex batchIndex = new ReservationIndex();
+        List<Integer> conflicts = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Appointment appointment = batch.get(i);
+            if (!isAppointmentFree(appointment, batchIndex)) conflicts.add(i);
+            batchIndex.add(appointment);
+        }
+        return conflicts;
+    }
+
+    // Checks an appointment against the schedule and against appointments staged for the same batch
+    private boolean isAppointmentFree(Appointment appointment, ReservationIndex staged) {
+        return isFree(appointment) && !staged.anyMatch(appointment, a -> isOverlap(a, appointment));
+    }
+
+    private void commitAppointments(List<Appointment> batch) {
+        commitChanges(List.of(), batch);
+    }
+
+    // Journals the deleted and added appointments as one record before applying them, so a failed append leaves the
+    // schedule unchanged and recovery never replays a part of the change. Must be called while holding the locks of
+    // all rooms of the change, after the change has been checked
+    private void commitChanges(List<Appointment> deleted, List<Appointment> added) {
+        if (deleted.isEmpty() && added.isEmpty()) return;
+        long sequence = journal(journal -> journal.appendChanges(deleted, added));
+        deleted.forEach(this::releaseAppointment);
+        if (!added.isEmpty()) reserveAppointments(added);
+        journaled(sequence);
+    }
+
+    private void reserveAppointments(List<Appointment> batch) {
+        Map<String, Map<Day, List<Appointment>>> groups = new LinkedHashMap<>();
+        for (Appointment appointment : batch) {
+            appointment.setDataListener(dataListener);
             this.reservedAppointments.add(appointment);
-            divideFreeAppointments(appointment);
+            this.reservationIndex.add(appointment);
+            if (occupancyCalendar != null) occupancyCalendar.reserve(appointment);
+            groups.computeIfAbsent(appointment.getScheduleRoom().getName(), name -> new HashMap<>())
+                    .computeIfAbsent(appointment.getTime().getDay(), day -> new ArrayList<>())
+                    .add(appointment);
         }
-        else throw new AppointmentOverlapException("Appointment cannot be added due overlapping with another appointment");
+        if (!isLazyFreeTime()) groups.values().forEach(byDay -> byDay.values().forEach(this::divideFreeAppointments));
+        groups.keySet().forEach(partitions::markDirty);
     }
 
     /**
      * Checks if an appointment can be added to the schedule without overlapping with existing appointments.
+     * <p>
+     * Only appointments in the same room, on the same day and with a touching date range are visited.
      *
      * @param appointment - The appointment to be checked for availability
      * @return - True if the appointment time and room are available, false if there's an overlap
      */
     public boolean isAppointmentFree(Appointment appointment) {
-        return reservedAppointments.stream()
-                .filter(a -> a.getScheduleRoom().equals(appointment.getScheduleRoom())
-                        && a.getTime().getDay().equals(appointment.getTime().getDay())
-                        && !a.equals(appointment))
-                .noneMatch(a -> isDateOverlap(a, appointment) && isTimeOverlap(a, appointment));
+        return locks.readRoom(appointment.getScheduleRoom().getName(), () -> isFree(appointment));
     }
 
-    private boolean isDateOverlap(Appointment appointment1, Appointment appointment2) {
-        LocalDate startDate1 = appointment1.getTime().getStartDate();
-        LocalDate endDate1 = appointment1.getTime().getEndDate();
-        LocalDate startDate2 = appointment2.getTime().getStartDate();
-        LocalDate endDate2 = appointment2.getTime().getEndDate();
+    private boolean isFree(Appointment appointment) {
+        return !reservationIndex.anyMatch(appointment, a -> isOverlap(a, appointment));
+    }
 
-        if (startDate1.equals(startDate2) || endDate1.equals(startDate2)) return true;
-        return startDate1.isBefore(endDate2) && endDate1.isAfter(startDate2);
+    // Equal appointments do not overlap, they stand for the same booking
+    private boolean isOverlap(Appointment appointment1, Appointment appointment2) {
+        return !appointment1.equals(appointment2)
+                && isDateOverlap(appointment1, appointment2)
+                && isTimeOverlap(appointment1, appointment2);
     }
 
-    private boolean isTimeOverlap(Appointment appointment1, Appointment appointment2) {
-        int[] a1Start = ScheduleUtils.getInstance().getTimeComponents(appointment1.getTime().getStartTime());
-        int[] a1End = ScheduleUtils.getInstance().getTimeComponents(appointment1.getTime().getEndTime());
-        int[] a2Start = ScheduleUtils.getInstance().getTimeComponents(appointment2.getTime().getStartTime());
-        int[] a2End = ScheduleUtils.getInstance().getTimeComponents(appointment2.getTime().getEndTime());
+    /**
+     * Checks whether the room has no reserved appointment overlapping the given time on the given date.
+     *
+     * @param room - Room to be checked
+     * @param date - Date to be checked
+     * @param startTime - Start of the time window
+     * @param endTime - End of the time window
+     * @return - True if the room is free during the whole window
+     */
+    public boolean isRoomFree(ScheduleRoom room, LocalDate date, String startTime, String endTime) {
+        int start = Time.toMinutes(startTime), end = Time.toMinutes(endTime);
+        return locks.readRoom(room.getName(), () -> {
+            if (occupancyCalendar != null) return occupancyCalendar.isFree(room, date, start, end, reservationIndex);
+            return !reservationIndex.anyMatchOn(room, date, a -> a.getTime().getStartMinute() < end && a.getTime().getEndMinute() > start);
+        });
+    }
+
+    /**
+     * Finds rooms that have no reserved appointment overlapping the given time on the given date.
+     *
+     * @param date - Date to be checked
+     * @param startTime - Start of the time window
+     * @param endTime - End of the time window
+     * @return - A list of rooms free during the whole window
+     */
+    public List<ScheduleRoom> findFreeRooms(LocalDate date, String startTime, String endTime) {
+        return rooms.list().stream()
+                .filter(room -> isRoomFree(room, date, startTime, endTime))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Finds rooms which meet the requirements and are free at the time, on its day of every week between its dates.
+     * Rooms are narrowed down by capacity and equipment before their reservations are checked.
+     *
+     * @param requirements - Capacity and equipment the rooms must have
+     * @param time - Day, time window and range of dates of the weekly appointment
+     * @return - Rooms free during every week, the best fitting first: the least spare capacity, then the least spare
+     *           equipment
+     */
+    public List<ScheduleRoom> findRoomsFor(RoomRequirements requirements, ReservedTime time) {
+        return rooms.find(requirements).stream()
+                .filter(room -> {
+                    Appointment appointment = new Appointment(time, room);
+                    return locks.readRoom(room.getName(), () -> isFree(appointment));
+                })
+                .collect(Collectors.toList());
+    }
 
-        if (!(a1End[0] <= a2Start[0] || a2End[0] <= a1Start[0])) return true;
-        if (a1End[0] == a2Start[0] && a1End[1] > a2Start[1]) return true;
-        return a2End[0] == a1Start[0] && a2End[1] > a1Start[1];
+    // Appointments meet if they recur on a common date, decided without listing their dates
+    private boolean isDateOverlap(Appointment appointment1, Appointment appointment2) {
+        return RecurrenceRule.of(appointment1.getTime()).intersects(RecurrenceRule.of(appointment2.getTime()));
+    }
+
+    // Hours are compared first and minutes only on a shared boundary hour, as in the original "H:mm" comparison
+    private boolean isTimeOverlap(Appointment appointment1, Appointment appointment2) {
+        int a1Start = appointment1.getTime().getStartMinute();
+        int a1End = appointment1.getTime().getEndMinute();
+        int a2Start = appointment2.getTime().getStartMinute();
+        int a2End = appointment2.getTime().getEndMinute();
+
+        if (!(a1End / 60 <= a2Start / 60 || a2End / 60 <= a1Start / 60)) return true;
+        if (a1End / 60 == a2Start / 60 && a1End % 60 > a2Start % 60) return true;
+        return a2End / 60 == a1Start / 60 && a2End % 60 > a1Start % 60;
     }
 
     private List<Appointment> getFreeAppointmentsByTarget(Appointment target) {
-        return freeAppointments.stream()
-                .filter(freeAppointment -> freeAppointment.getScheduleRoom().equals(target.getScheduleRoom())
-                        && freeAppointment.getTime().getDate().isAfter(target.getTime().getStartDate().minusDays(1))
-                        && freeAppointment.getTime().getDate().isBefore(target.getTime().getEndDate().plusDays(1))
-                        && freeAppointment.getTime().getDay().equals(target.getTime().getDay()))
+        return freeAppointments.between(target.getScheduleRoom(), target.getTime().getStartDate(), target.getTime().getEndDate()).stream()
+                .filter(freeAppointment -> freeAppointment.getTime().getDay().equals(target.getTime().getDay()))
                 .collect(Collectors.toList());
     }
 
     private void divideFreeAppointments(Appointment reservedAppointment) {
-        List<Appointment> updateList = getFreeAppointmentsByTarget(reservedAppointment);
-        updateList.forEach(freeAppointment -> divide(freeAppointment, reservedAppointment));
+        divideFreeAppointments(Collections.singletonList(reservedAppointment));
+    }
+
+    /**
+     * Divides free appointments by reserved appointments which all share the same room and day.
+     * Free appointments of the room and day are looked up once and kept grouped by date while they are divided.
+     */
+    private void divideFreeAppointments(List<Appointment> reservedAppointments) {
+        Appointment first = reservedAppointments.get(0);
+        LocalDate from = reservedAppointments.stream().map(a -> a.getTime().getStartDate()).min(LocalDate::compareTo).orElseThrow();
+        LocalDate to = reservedAppointments.stream().map(a -> a.getTime().getEndDate()).max(LocalDate::compareTo).orElseThrow();
+
+        NavigableMap<LocalDate, List<Appointment>> candidatesByDate = freeAppointments.between(first.getScheduleRoom(), from, to).stream()
+                .filter(freeAppointment -> freeAppointment.getTime().getDay().equals(first.getTime().getDay()))
+                .collect(Collectors.groupingBy(a -> a.getTime().getDate(), TreeMap::new, Collectors.toList()));
+
+        for (Appointment reservedAppointment : reservedAppointments) {
+            LocalDate startDate = reservedAppointment.getTime().getStartDate();
+            LocalDate endDate = reservedAppointment.getTime().getEndDate();
+            if (startDate.isAfter(endDate)) continue;
+            for (List<Appointment> candidates : candidatesByDate.subMap(startDate, true, endDate, true).values()) {
+                List<Appointment> divided = new ArrayList<>();
+                candidates.forEach(freeAppointment -> divided.addAll(divide(freeAppointment, reservedAppointment)));
+                candidates.clear();
+                candidates.addAll(divided);
+            }
+        }
     }
 
-    private void divide(Appointment freeAppointment, Appointment reservedAppointment) {
+    // Returns free appointments which replace the divided one
+    private List<Appointment> divide(Appointment freeAppointment, Appointment reservedAppointment) {
         if (ScheduleUtils.getInstance().areTwoAppointmentsHaveSameTime(freeAppointment, reservedAppointment)) {
             freeAppointments.remove(freeAppointment);
+            return Collections.emptyList();
         }
         else if (ScheduleUtils.getInstance().areTwoAppointmentsHaveSameStartTime(freeAppointment, reservedAppointment)) {
-            freeAppointment.getTime().setStartTime(reservedAppointment.getTime().getEndTime());
+            return Collections.singletonList(resize(freeAppointment, reservedAppointment.getTime().getEndMinute(), freeAppointment.getTime().getEndMinute()));
         }
         else if (ScheduleUtils.getInstance().areTwoAppointmentsHaveSameEndTime(freeAppointment, reservedAppointment)) {
-            freeAppointment.getTime().setEndTime(reservedAppointment.getTime().getStartTime());
+            return Collections.singletonList(resize(freeAppointment, freeAppointment.getTime().getStartMinute(), reservedAppointment.getTime().getStartMinute()));
         }
         else if (ScheduleUtils.getInstance().isOneAppointmentTimeContainsAnother(freeAppointment, reservedAppointment)) {
             Time<LocalDate> t1 = freeAppointment.getTime();
             Time<LocalDate>  t2 = reservedAppointment.getTime();
 
-            FreeTime s1 = new FreeTime(t1.getDay(), t1.getStartTime(), t2.getStartTime(), t1.getDate());
-            FreeTime s2 = new FreeTime(t1.getDay(), t2.getEndTime(), t1.getEndTime(), t1.getDate());
+            FreeTime s1 = new FreeTime(t1.getDay(), t1.getStartMinute(), t2.getStartMinute(), t1.getDate());
+            FreeTime s2 = new FreeTime(t1.getDay(), t2.getEndMinute(), t1.getEndMinute(), t1.getDate());
 
             Appointment appointment1 = new Appointment(s1, reservedAppointment.getScheduleRoom());
             Appointment appointment2 = new Appointment(s2, reservedAppointment.getScheduleRoom());
             freeAppointments.add(appointment1);
             freeAppointments.add(appointment2);
             freeAppointments.remove(freeAppointment);
+            return Arrays.asList(appointment1, appointment2);
         }
+        return Collections.singletonList(freeAppointment);
+    }
+
+    // Free appointments are replaced rather than changed, published snapshots share them
+    private Appointment resize(Appointment freeAppointment, int startMinute, int endMinute) {
+        Time<LocalDate> time = freeAppointment.getTime();
+        Appointment resized = new Appointment(new FreeTime(time.getDay(), startMinute, endMinute, time.getDate()), freeAppointment.getScheduleRoom());
+        freeAppointments.replace(freeAppointment, resized);
+        return resized;
     }
 
     /**
@@ -255,9 +503,57 @@ public abstract class Schedule {
      */
     public void deleteAppointment(Appointment appointment) {
         if (this.reservedAppointments == null || appointment == null) return;
-        if (reservedAppointments.contains(appointment)) {
-            this.reservedAppointments.remove(appointment);
-            fixFreeAppointments(appointment);
+        locks.writeRooms(List.of(appointment.getScheduleRoom().getName()), () -> removeAppointment(appointment));
+        compactJournalIfFull();
+    }
+
+    // Must be called while holding the lock of the room
+    private void removeAppointment(Appointment appointment) {
+        if (!reservedAppointments.contains(appointment)) return;
+        long sequence = journal(journal -> journal.appendDeleteAppointment(appointment));
+        releaseAppointment(appointment);
+        journaled(sequence);
+    }
+
+    // Must be called while holding the lock of the room, on a reserved appointment
+    private void releaseAppointment(Appointment appointment) {
+        Appointment removed = this.reservedAppointments.remove(appointment);
+        if (removed != null) removed.setDataListener(null);
+        this.reservationIndex.remove(appointment);
+        if (occupancyCalendar != null) occupancyCalendar.release(appointment, reservationIndex);
+        if (!isLazyFreeTime()) fixFreeAppointments(appointment);
+        partitions.markDirty(appointment.getScheduleRoom().getName());
+    }
+
+    // Journals a change of data of a reserved appointment made through its setters and keeps the data index current
+    private void dataChanged(ScheduleObject object, String key, Object oldValue, Object newValue) {
+        Appointment appointment = (Appointment) object;
+        String room = appointment.getScheduleRoom().getName();
+        locks.writeRooms(List.of(room), () -> {
+            if (!reservedAppointments.holds(appointment)) return;
+            long sequence = journal(journal -> journal.appendChangeData(appointment, key, newValue));
+            reservedAppointments.reindex(appointment, key, oldValue, newValue);
+            journaled(sequence);
+            partitions.markDirty(room);
+        });
+        compactJournalIfFull();
+    }
+
+    /**
+     * Sets or removes a value of the reserved appointment equal to the given one, as recorded in the journal.
+     *
+     * @param value - New value, or null to remove the key
+     */
+    void replayDataChange(Appointment appointment, String key, Object value) {
+        for (Appointment reserved : findReservedAppointmentsByRoom(appointment.getScheduleRoom())) {
+            if (!reserved.equals(appointment)) continue;
+            if (value != null) reserved.putData(key, value);
+            else if (reserved.getAllData().containsKey(key)) {
+                Map<String, Object> data = new LinkedHashMap<>(reserved.getAllData());
+                data.remove(key);
+                reserved.setData(data);
+            }
+            return;
         }
     }
 
@@ -284,7 +580,7 @@ public abstract class Schedule {
             List<Appointment> candidates = candidatesByDate.get(date);
             Appointment changed = prepareForMerge(candidates, deleteAppointment);
             if (changed == null) {
-                FreeTime time = new FreeTime(deleteAppointment.getTime().getDay(), deleteAppointment.getTime().getStartTime(), deleteAppointment.getTime().getEndTime(), date);
+                FreeTime time = new FreeTime(deleteAppointment.getTime().getDay(), deleteAppointment.getTime().getStartMinute(), deleteAppointment.getTime().getEndMinute(), date);
                 Appointment appointment = new Appointment(time, deleteAppointment.getScheduleRoom());
                 freeAppointments.add(appointment);
             }
@@ -292,17 +588,19 @@ public abstract class Schedule {
         }
     }
 
+    // The extended candidate replaces the original one in the list
     private Appointment prepareForMerge(List<Appointment> candidates, Appointment deleteAppointment) {
         Appointment changed = null;
-        for (Appointment candidate : candidates) {
-            if (candidate.getTime().getStartTime().equals(deleteAppointment.getTime().getEndTime())) {
-                candidate.getTime().setStartTime(deleteAppointment.getTime().getStartTime());
-                changed = candidate;
-                break;
+        for (int i = 0; i < candidates.size(); i++) {
+            Time<LocalDate> time = candidates.get(i).getTime();
+            if (time.getStartMinute() == deleteAppointment.getTime().getEndMinute()) {
+                changed = resize(candidates.get(i), deleteAppointment.getTime().getStartMinute(), time.getEndMinute());
+            }
+            else if (time.getEndMinute() == deleteAppointment.getTime().getStartMinute()) {
+                changed = resize(candidates.get(i), time.getStartMinute(), deleteAppointment.getTime().getEndMinute());
             }
-            else if (candidate.getTime().getEndTime().equals(deleteAppointment.getTime().getStartTime())) {
-                candidate.getTime().setEndTime(deleteAppointment.getTime().getEndTime());
-                changed = candidate;
+            if (changed != null) {
+                candidates.set(i, changed);
                 break;
             }
         }
@@ -312,13 +610,13 @@ public abstract class Schedule {
     private void merge(List<Appointment> candidates, Appointment changed) {
         for (Appointment candidate : candidates) {
             if (candidate.equals(changed)) continue;
-            if (candidate.getTime().getEndTime().equals(changed.getTime().getStartTime())) {
-                candidate.getTime().setEndTime(changed.getTime().getEndTime());
+            if (candidate.getTime().getEndMinute() == changed.getTime().getStartMinute()) {
+                resize(candidate, candidate.getTime().getStartMinute(), changed.getTime().getEndMinute());
                 freeAppointments.remove(changed);
                 break;
             }
-            else if (candidate.getTime().getStartTime().equals(changed.getTime().getEndTime())) {
-                candidate.getTime().setStartTime(changed.getTime().getStartTime());
+            else if (candidate.getTime().getStartMinute() == changed.getTime().getEndMinute()) {
+                resize(candidate, changed.getTime().getStartMinute(), candidate.getTime().getEndMinute());
                 freeAppointments.remove(changed);
                 break;
             }
@@ -335,16 +633,76 @@ public abstract class Schedule {
      */
     public void changeAppointment(Appointment oldAppointment, Appointment newAppointment) {
         if (this.reservedAppointments == null || oldAppointment == null || newAppointment == null) return;
-        if (!reservedAppointments.contains(oldAppointment)) throw new AppointmentNotFoundException("Appointment not found");
-        if (!checkAppointmentData(oldAppointment, newAppointment)) throw new DifferentDataException("Appointments have different data");
-        deleteAppointment(oldAppointment);
-        if (isAppointmentFree(newAppointment)) {
-            addAppointment(newAppointment);
+        transaction().changeAppointment(oldAppointment, newAppointment).commit();
+    }
+
+    /**
+     * Starts a transaction which stages adds, deletes and moves of appointments and applies them all at once.
+     *
+     * @return - New transaction on this schedule
+     */
+    public ScheduleTransaction transaction() {
+        return new ScheduleTransaction(this);
+    }
+
+    // Called by a transaction on commit
+    void commitTransaction(List<ScheduleTransaction.Change> changes) {
+        if (this.reservedAppointments == null || changes.isEmpty()) return;
+        Set<String> changedRooms = new HashSet<>();
+        for (ScheduleTransaction.Change change : changes) {
+            if (change.getDeleted() != null) changedRooms.add(change.getDeleted().getScheduleRoom().getName());
+            if (change.getAdded() != null) changedRooms.add(change.getAdded().getScheduleRoom().getName());
         }
-        else {
-            addAppointment(oldAppointment);
-            throw new AppointmentOverlapException("Appointment cannot be replaced due overlapping with another appointment");
+        locks.writeRooms(changedRooms, () -> applyTransaction(changes));
+        compactJournalIfFull();
+    }
+
+    /**
+     * Resolves the changes into deleted and added appointments, checks the added ones against the schedule overlaid
+     * with all changes, and only then deletes and adds appointments. Overlaps are checked on the final state, so
+     * appointments may swap places. Must be called while holding the locks of all rooms of the changes.
+     */
+    private void applyTransaction(List<ScheduleTransaction.Change> changes) {
+        List<Appointment> deleted = new ArrayList<>();
+        List<ScheduleTransaction.Change> adds = new ArrayList<>();
+        for (ScheduleTransaction.Change change : changes) {
+            Appointment oldAppointment = change.getDeleted();
+            Appointment newAppointment = change.getAdded();
+            if (oldAppointment != null) {
+                int index = indexOfAdded(adds, oldAppointment);
+                boolean reserved = index < 0 && reservedAppointments.contains(oldAppointment) && !deleted.contains(oldAppointment);
+                if (index < 0 && !reserved) throw new AppointmentNotFoundException("Appointment not found");
+                if (newAppointment != null && !checkAppointmentData(oldAppointment, newAppointment)) throw new DifferentDataException("Appointments have different data");
+                if (reserved) deleted.add(oldAppointment);
+                else adds.remove(index);
+            }
+            if (newAppointment != null) {
+                // adding back a deleted appointment with the same data leaves it where it is
+                int index = deleted.indexOf(newAppointment);
+                if (index >= 0 && checkAppointmentData(deleted.get(index), newAppointment)) deleted.remove(index);
+                else adds.add(change);
+            }
+        }
+
+        ReservationIndex staged = new ReservationIndex();
+        for (ScheduleTransaction.Change change : adds) {
+            Appointment appointment = change.getAdded();
+            if (reservationIndex.anyMatch(appointment, a -> !deleted.contains(a) && isOverlap(a, appointment))
+                    || staged.anyMatch(appointment, a -> isOverlap(a, appointment))) {
+                String action = (change.getDeleted() == null) ? "added" : "replaced";
+                throw new AppointmentOverlapException("Appointment cannot be " + action + " due overlapping with another appointment");
+            }
+            staged.add(appointment);
         }
+
+        commitChanges(deleted, adds.stream().map(ScheduleTransaction.Change::getAdded).collect(Collectors.toList()));
+    }
+
+    private int indexOfAdded(List<ScheduleTransaction.Change> adds, Appointment appointment) {
+        for (int i = 0; i < adds.size(); i++) {
+            if (adds.get(i).getAdded().equals(appointment)) return i;
+        }
+        return -1;
     }
 
     private boolean checkAppointmentData(Appointment app1, Appointment app2) {
@@ -354,7 +712,7 @@ public abstract class Schedule {
                     String key = entry1.getKey();
                     Object value1 = entry1.getValue();
                     Object value2 = app2.getAllData().get(key);
-                    return value1.equals(value2);
+                    return app2.getAllData().containsKey(key) && Objects.equals(value1, value2);
                 });
     }
 
@@ -365,7 +723,7 @@ public abstract class Schedule {
      * @return - A list of free appointments matching the query.
      */
     public List<Appointment> findFreeAppointmentsByDate(LocalDate date) {
-        return ScheduleUtils.getInstance().findFreeAppointmentsByDate(date, freeAppointments);
+        return queryFreeAppointments().date(date).list();
     }
 
     /**
@@ -379,7 +737,7 @@ public abstract class Schedule {
      * @return - A list of free appointments matching the query.
      */
     public List<Appointment> findFreeAppointmentsByDayAndPeriod(Day day, LocalDate startDate, LocalDate endDate, String startTime, String endTime) {
-        return ScheduleUtils.getInstance().findFreeAppointmentsByDayAndPeriod(day, startDate, endDate, startTime, endTime, freeAppointments);
+        return queryFreeAppointments().day(day).between(startDate, endDate).during(startTime, endTime).list();
     }
 
     /**
@@ -392,7 +750,7 @@ public abstract class Schedule {
      * @return - A list of free appointments matching the query.
      */
     public List<Appointment> findFreeAppointmentsByDateTime(LocalDate startDate, LocalDate endDate, String startTime, String endTime) {
-        return ScheduleUtils.getInstance().findFreeAppointmentsByDateTime(startDate, endDate, startTime, endTime, freeAppointments);
+        return queryFreeAppointments().between(startDate, endDate).during(startTime, endTime).list();
     }
 
     /**
@@ -405,7 +763,7 @@ public abstract class Schedule {
      * @return - A list of free appointments matching the query.
      */
     public List<Appointment> findFreeAppointmentsByDateTimeDuration(LocalDate startDate, LocalDate endDate, String startTime, String duration) {
-        return ScheduleUtils.getInstance().findFreeAppointmentsByDateTimeDuration(startDate, endDate, startTime, duration, freeAppointments);
+        return queryFreeAppointments().between(startDate, endDate).lasting(startTime, duration).list();
     }
 
     /**
@@ -416,8 +774,8 @@ public abstract class Schedule {
      * @throws RoomNotFoundException if the room does not exist.
      */
     public List<Appointment> findFreeAppointmentsByRoom(ScheduleRoom room) {
-        if (!rooms.contains(room)) throw new RoomNotFoundException("Room does not exist");
-        return ScheduleUtils.getInstance().findAppointmentsByRoom(room, freeAppointments);
+        if (!snapshot.get().getRooms().contains(room)) throw new RoomNotFoundException("Room does not exist");
+        return queryFreeAppointments().room(room).list();
     }
 
     /**
@@ -427,7 +785,7 @@ public abstract class Schedule {
      * @return - A list of free appointments that contain all the specified keys and values in the additional data.
      */
     public List<Appointment> findFreeAppointmentsByData(Map<String, Object> data) {
-        return ScheduleUtils.getInstance().findAppointmentsByData(data, freeAppointments);
+        return queryFreeAppointments().data(data).list();
     }
 
     /**
@@ -441,7 +799,8 @@ public abstract class Schedule {
      * @throws IllegalArgumentException if the 'data' array is empty.
      */
     public List<Appointment> findFreeAppointmentsByData(String ... keys) {
-        return ScheduleUtils.getInstance().findAppointmentsByData(freeAppointments, keys);
+        if (keys == null || keys.length == 0) throw new IllegalArgumentException("At least one key must be provided for the search.");
+        return queryFreeAppointments().keys(keys).list();
     }
 
     /**
@@ -451,7 +810,7 @@ public abstract class Schedule {
      * @return - A list of occupied appointments matching the query.
      */
     public List<Appointment> findReservedAppointmentsByDate(LocalDate date) {
-        return ScheduleUtils.getInstance().findReservedAppointmentsByDate(date, reservedAppointments);
+        return queryReservedAppointments().date(date).list();
     }
 
     /**
@@ -465,7 +824,7 @@ public abstract class Schedule {
      * @return - A list of occupied appointments matching the query.
      */
     public List<Appointment> findReservedAppointmentsByDayAndPeriod(Day day, LocalDate startDate, LocalDate endDate, String startTime, String endTime) {
-        return ScheduleUtils.getInstance().findReservedAppointmentsByDayAndPeriod(day, startDate, endDate, startTime, endTime, reservedAppointments);
+        return queryReservedAppointments().day(day).between(startDate, endDate).during(startTime, endTime).list();
     }
 
     /**
@@ -478,7 +837,7 @@ public abstract class Schedule {
      * @return - A list of occupied appointments matching the query.
      */
     public List<Appointment> findReservedAppointmentsByDateTime(LocalDate startDate, LocalDate endDate, String startTime, String endTime) {
-        return ScheduleUtils.getInstance().findReservedAppointmentsByDateTime(startDate, endDate, startTime, endTime, reservedAppointments);
+        return queryReservedAppointments().between(startDate, endDate).during(startTime, endTime).list();
     }
 
     /**
@@ -491,7 +850,7 @@ public abstract class Schedule {
      * @return - A list of occupied appointments matching the query.
      */
     public List<Appointment> findReservedAppointmentsByDateTimeDuration(LocalDate startDate, LocalDate endDate, String startTime, String duration) {
-        return ScheduleUtils.getInstance().findReservedAppointmentsByDateTimeDuration(startDate, endDate, startTime, duration, reservedAppointments);
+        return queryReservedAppointments().between(startDate, endDate).lasting(startTime, duration).list();
     }
 
     /**
@@ -502,8 +861,8 @@ public abstract class Schedule {
      * @throws RoomNotFoundException if the room does not exist.
      */
     public List<Appointment> findReservedAppointmentsByRoom(ScheduleRoom room) {
-        if (!rooms.contains(room)) throw new RoomNotFoundException("Room does not exist");
-        return ScheduleUtils.getInstance().findAppointmentsByRoom(room, reservedAppointments);
+        if (!snapshot.get().getRooms().contains(room)) throw new RoomNotFoundException("Room does not exist");
+        return queryReservedAppointments().room(room).list();
     }
 
     /**
@@ -513,7 +872,7 @@ public abstract class Schedule {
      * @return - A list of occupied appointments that contain all the specified keys and values in the additional data.
      */
     public List<Appointment> findReservedAppointmentsByData(Map<String, Object> data) {
-        return ScheduleUtils.getInstance().findAppointmentsByData(data, reservedAppointments);
+        return queryReservedAppointments().data(data).list();
     }
 
     /**
@@ -527,127 +886,467 @@ public abstract class Schedule {
      * @throws IllegalArgumentException if the 'data' array is empty.
      */
     public List<Appointment> findReservedAppointmentsByData(String ... keys) {
-        return ScheduleUtils.getInstance().findAppointmentsByData(reservedAppointments, keys);
+        if (keys == null || keys.length == 0) throw new IllegalArgumentException("At least one key must be provided for the search.");
+        return queryReservedAppointments().keys(keys).list();
+    }
+
+    /**
+     * Starts a search over free appointments which combines any of the constraints of the query.
+     *
+     * @return - New query over the free appointments of this schedule
+     */
+    public AppointmentQuery queryFreeAppointments() {
+        return new AppointmentQuery(true, () -> this::selectFreeAppointments, tokenizer);
+    }
+
+    /**
+     * Starts a search over occupied appointments which combines any of the constraints of the query.
+     *
+     * @return - New query over the occupied appointments of this schedule
+     */
+    public AppointmentQuery queryReservedAppointments() {
+        return new AppointmentQuery(false, () -> snapshot.get().getReservedAppointments(), tokenizer);
+    }
+
+    /**
+     * Starts a search for slots in which several rooms and participants identified by additional data are free at
+     * once.
+     *
+     * @return - New query over the reserved appointments of this schedule
+     */
+    public FreeSlotQuery queryFreeSlots() {
+        return new FreeSlotQuery(config, this::queryReservedAppointments);
+    }
+
+    // Free appointments computed in the lazy mode are read from the live index room by room, each under the lock of
+    // its room, so a search over every room never stalls bookings and sees every room in a consistent state, though a
+    // room changed during the search may be seen before or after the change
+    private Stream<Appointment> selectFreeAppointments(ScheduleRoom room, LocalDate from, LocalDate to) {
+        if (!isLazyFreeTime()) return snapshot.get().getFreeAppointments().select(room, from, to);
+        LocalDate first = (from == null) ? LocalDate.MIN : from;
+        LocalDate last = (to == null) ? LocalDate.MAX : to;
+        List<ScheduleRoom> searched = (room != null) ? Collections.singletonList(room) : rooms.list();
+        return searched.stream().flatMap(scheduleRoom -> locks.readRoom(scheduleRoom.getName(),
+                () -> freeTimeComplement.stream(Collections.singletonList(scheduleRoom), first, last).collect(Collectors.toList())).stream());
+    }
+
+    /**
+     * Publishes a snapshot with the current state of the given rooms, or of every changed room and the room list if
+     * the rooms are null. Called by the locks before they are released.
+     */
+    private void publish(Collection<String> roomNames) {
+        if (reservedAppointments == null) return;
+        if (roomNames == null) {
+            snapshot.updateAndGet(current -> current.next(rooms,
+                    reservedAppointments.publish(current.getReservedAppointments(), null),
+                    freeAppointments.publish(current.getFreeAppointments(), null)));
+        }
+        else {
+            snapshot.updateAndGet(current -> current.next(current.getRooms(),
+                    reservedAppointments.publish(current.getReservedAppointments(), roomNames),
+                    freeAppointments.publish(current.getFreeAppointments(), roomNames)));
+        }
+    }
+
+    /**
+     * Returns the version of the published state of the schedule, which grows with every change.
+     *
+     * @return - Version of the schedule
+     */
+    public long getVersion() {
+        return snapshot.get().getVersion();
+    }
+
+    private boolean isLazyFreeTime() {
+        return freeTimeComplement != null;
     }
 
     /**
      * Loads the schedule from a file in the specified format.
+     * <p>
+     * The format is chosen by the extension: .csv, .json (JSON and JSON2) or .bin (BIN). Appointments from CSV and BIN
+     * files are added as by {@link #addAppointments(Collection)}, so none of them is added if any of them overlaps.
+     * JSON files are streamed and added in batches of 1024 appointments, so loading takes bounded memory besides the
+     * appointments added: a batch is added only if none of its appointments overlaps, and the batches before it stay
+     * added.
      *
      * @param path - Path to the file from which the schedule is loaded
      */
     public void loadScheduleFromFile(String path) throws IOException {
-        if (path.endsWith(".csv")) loadFromCSV(path);
-        else if (path.endsWith(".json")) loadFromJSON(path);
+        locks.exclusive(() -> {
+            if (path.endsWith(".csv")) loadFromCSV(path);
+            else if (path.endsWith(".json")) loadFromJSON(path);
+            else if (path.endsWith(".bin")) loadFromBinary(path);
+        });
+        compactJournalIfFull();
+    }
+
+    /**
+     * Loads the schedule from a file in the specified format using several threads.
+     * <p>
+     * CSV rows are read by one thread and parsed by the worker threads, then appointments of every room are checked
+     * for overlaps in parallel. If any of them overlaps nothing is added and the exception lists the overlapping rows,
+     * numbered from 1 after the header, in ascending order. Only parsing and the overlap checks are parallel: the
+     * appointments are then added on the calling thread as one journaled change, as by
+     * {@link #addAppointments(Collection)}. Other formats are loaded as by {@link #loadScheduleFromFile(String)}.
+     *
+     * @param path - Path to the file from which the schedule is loaded
+     * @param workers - Number of worker threads
+     * @throws AppointmentOverlapException if any appointment overlaps with an existing or another loaded appointment
+     */
+    public void loadScheduleFromFile(String path, int workers) throws IOException {
+        if (workers < 2 || !path.endsWith(".csv")) {
+            loadScheduleFromFile(path);
+            return;
+        }
+        locks.exclusive(() -> loadFromCSV(path, workers));
+        compactJournalIfFull();
+    }
+
+    private void loadFromCSV(String path, int workers) throws IOException {
+        ConcurrentMap<String, ScheduleRoom> roomsByName = new ConcurrentHashMap<>(rooms.toMap());
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers + 1);
+        try {
+            List<Appointment> appointments = new CsvImportPipeline(config, executor, workers).parse(path, roomsByName);
+            List<Integer> conflicts = findConflicts(appointments, executor);
+            if (!conflicts.isEmpty()) {
+                String rows = conflicts.stream().map(i -> String.valueOf(i + 1)).collect(Collectors.joining(", "));
+                throw new AppointmentOverlapException("Appointments in rows " + rows + " cannot be added due overlapping with other appointments");
+            }
+            commitAppointments(appointments);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Checks every room on its own thread and returns positions of overlapping appointments in ascending order
+    private List<Integer> findConflicts(List<Appointment> appointments, ExecutorService executor) throws IOException {
+        Map<String, List<Integer>> positionsByRoom = new LinkedHashMap<>();
+        for (int i = 0; i < appointments.size(); i++)
+            positionsByRoom.computeIfAbsent(appointments.get(i).getScheduleRoom().getName(), name -> new ArrayList<>()).add(i);
+
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+        for (List<Integer> positions : positionsByRoom.values()) {
+            futures.add(executor.submit(() -> {
+                List<Appointment> batch = positions.stream().map(appointments::get).collect(Collectors.toList());
+                return findConflicts(batch).stream().map(positions::get).collect(Collectors.toList());
+            }));
+        }
+
+        List<Integer> conflicts = new ArrayList<>();
+        try {
+            for (Future<List<Integer>> future : futures) conflicts.addAll(future.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading interrupted", e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+        Collections.sort(conflicts);
+        return conflicts;
     }
 
     private void loadFromCSV(String path) throws IOException {
-        String headerColumns = config.getColumns();
+        Map<String, ScheduleRoom> roomsByName = rooms.toMap();
 
+        List<Appointment> appointments = new ArrayList<>();
         try (CSVReader reader = new CSVReader(new FileReader(path))) {
             String[] row, header = reader.readNext();
+            if (header == null) return;
+            CsvColumnPlan plan = new CsvColumnPlan(header, config);
             while ((row = reader.readNext()) != null) {
-                Map<String, Object> data = getDataFromColumn(row, header, headerColumns);
-                List<String> columnsList = Arrays.asList(header);
-                if (headerColumns.contains("START_DATE") && headerColumns.contains("END_DATE")) {
-                    int indexOfStartDate = columnsList.indexOf("START_DATE");
-                    int indexOfEndDate = columnsList.indexOf("END_DATE");
-                    classicDistribution(row, header, data, indexOfStartDate, indexOfEndDate);
-                }
-                else {
-                    dayDistribution(row, header, data, config.getStartDate(), config.getEndDate());
-                }
+                appointments.add(plan.createAppointment(row, roomsByName));
+            }
+        }
+        insertAppointments(appointments, groupByRoom(appointments));
+    }
 
+    // Streams the file and commits it in batches, so staging takes memory proportional to one batch, not the file
+    private void loadFromJSON(String path) throws IOException {
+        Map<String, ScheduleRoom> roomsByName = rooms.toMap();
+
+        ReservationIndex staged = new ReservationIndex();
+        List<Appointment> batch = new ArrayList<>();
+        int conflicts = 0, committed = 0;
+        try (JsonAppointmentReader reader = new JsonAppointmentReader(new BufferedReader(new FileReader(path)), roomsByName)) {
+            Appointment appointment;
+            while ((appointment = reader.next()) != null) {
+                if (!isAppointmentFree(appointment, staged)) conflicts++;
+                staged.add(appointment);
+                batch.add(appointment);
+                if (batch.size() == JSON_BATCH) {
+                    commitLoadedBatch(batch, conflicts, committed);
+                    committed += batch.size();
+                    staged = new ReservationIndex();
+                    batch = new ArrayList<>();
+                }
             }
         }
+        commitLoadedBatch(batch, conflicts, committed);
     }
 
-    private Map<String, Object> getDataFromColumn(String[] row, String[] columns, String container) {
-        Map<String, Object> data = new LinkedHashMap<>();
-        Arrays.stream(columns).
-                filter(column -> !column.equals("START_DATE")
-                        && !column.equals("END_DATE")
-                        && !column.equals("DAY")
-                        && !column.equals("TIME")
-                        && !column.equals("ROOM")
-                        && container.contains(column.replaceAll("﻿", "")))
-                .forEach(column -> {
-                    int columnIndex = Arrays.asList(columns).indexOf(column);
-                    if (columnIndex >= 0 && columnIndex < row.length)
-                        data.put(column.replaceAll("﻿", ""), row[columnIndex]);
-                    else
-                        data.put(column.replaceAll("﻿", ""), null);
-                });
+    private void commitLoadedBatch(List<Appointment> batch, int conflicts, int committed) {
+        if (conflicts > 0) throw new AppointmentOverlapException(conflicts + " appointments cannot be added due overlapping with other appointments, "
+                + committed + " appointments before them were added");
+        commitAppointments(batch);
+    }
 
-        return data;
+    private void loadFromBinary(String path) throws IOException {
+        Map<String, ScheduleRoom> roomsByName = rooms.toMap();
+        List<Appointment> appointments = new BinaryScheduleFormat().read(path, roomsByName);
+        insertAppointments(appointments, groupByRoom(appointments));
     }
 
-    private Appointment createAppointmentFromCSVRow(String[] row, String[] header, Map<String, Object> data, LocalDate startDate, LocalDate endDate) {
-        int indexOfTime = Arrays.asList(header).indexOf("TIME");
-        int indexOfDay = Arrays.asList(header).indexOf("DAY");
-        int indexOfRoom = Arrays.asList(header).indexOf("ROOM");
-        String[] time = row[indexOfTime].split("-");
+    /**
+     * Saves the complete state of the schedule, including its configuration, rooms and free appointments,
+     * to a checkpoint file which is restored by {@link #loadCheckpoint(String)}.
+     *
+     * @param path - Path to the checkpoint file
+     * @throws IllegalStateException if the schedule has no configuration
+     */
+    public void saveCheckpoint(String path) throws IOException {
+        locks.exclusive(() -> writeCheckpoint(path));
+    }
 
-        Optional<ScheduleRoom> roomOptional = this.rooms.stream()
-                .filter(room -> room.getName().equals(row[indexOfRoom]))
-                .findFirst();
+    private void writeCheckpoint(String path) throws IOException {
+        if (properties == null) throw new IllegalStateException("Schedule has no configuration");
+        ScheduleSnapshot current = snapshot.get();
+        List<Appointment> free = isLazyFreeTime() ? List.of() : current.getFreeAppointments().getAppointments();
+        ScheduleCheckpoint.write(path, journalSequence.get(), properties, current.getRooms().list(), current.getReservedAppointments().getAppointments(), free);
+    }
 
-        ScheduleRoom scheduleRoom = roomOptional.orElseGet(() -> new ScheduleRoom(row[indexOfRoom], 0));
+    /**
+     * Replaces the state of the schedule with a checkpoint saved by {@link #saveCheckpoint(String)}.
+     * <p>
+     * The checkpoint is memory-mapped. Free appointments are neither computed from the configuration nor divided by
+     * reservations, they are read from the checkpoint when first needed. Reserved appointments are read eagerly, and
+     * the reservation index and occupancy bitmaps are rebuilt from them, because every booking checks against them.
+     * Restoring therefore takes time proportional to the number of reserved appointments.
+     *
+     * @param path - Path to the checkpoint file
+     */
+    public void loadCheckpoint(String path) throws IOException {
+        ScheduleCheckpoint checkpoint = ScheduleCheckpoint.open(path);
+        locks.exclusive(() -> {
+            resetSchedule(null);
+            applyConfig(checkpoint.getProperties());
+            rooms = rooms.withAll(checkpoint.getRooms());
+            journalSequence.set(checkpoint.getSequence());
+            for (Appointment appointment : checkpoint.getReservedAppointments()) {
+                appointment.setDataListener(dataListener);
+                reservedAppointments.add(appointment);
+                reservationIndex.add(appointment);
+                occupancyCalendar.reserve(appointment);
+            }
+            if (!isLazyFreeTime()) freeAppointments.addLater(checkpoint::readFreeAppointments);
+        });
+    }
 
-        return new Appointment(new ReservedTime(Day.valueOf(row[indexOfDay]), time[0], time[1], startDate, endDate), scheduleRoom, data);
+    /**
+     * Starts recording every change of the schedule in an append-only journal.
+     * <p>
+     * If the checkpoint exists the schedule is first restored from it, then the journal records made after the
+     * checkpoint are replayed. Added and deleted appointments and rooms are recorded from then on, before they are
+     * applied. A change of several appointments, such as a move, a transaction or a batch, is one record of its
+     * deletions and additions, so it is recovered whole or not at all. Data of reserved appointments changed through
+     * putData or setData is recorded as well, changes made directly to the map of getAllData are not. Once the journal
+     * holds journalCompactRecords records it is compacted into the checkpoint.
+     *
+     * @param checkpointPath - Path to the checkpoint file
+     * @param journalPath - Path to the journal file
+     * @throws IllegalStateException if there is no checkpoint and the schedule has no configuration
+     */
+    public void openJournal(String checkpointPath, String journalPath) throws IOException {
+        closeJournal();
+        if (Files.exists(Paths.get(checkpointPath))) loadCheckpoint(checkpointPath);
+        if (config == null) throw new IllegalStateException("Schedule has no configuration");
+
+        ScheduleJournal journal = ScheduleJournal.open(journalPath, config.getJournalSyncRecords());
+        try {
+            journal.replay(journalSequence.get(), this);
+        }
+        catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        locks.exclusive(() -> {
+            this.journalSequence.set(journal.getSequence());
+            this.journal = journal;
+            this.checkpointPath = checkpointPath;
+        });
+        compactJournalIfFull();
     }
 
-    private void classicDistribution(String[] row, String[] header, Map<String, Object> data, int indexOfStartDate, int indexOfEndDate) {
-        LocalDate startDate = LocalDate.parse(row[indexOfStartDate]);
-        LocalDate endDate = LocalDate.parse(row[indexOfEndDate]);
-        Appointment appointment = createAppointmentFromCSVRow(row, header, data, startDate, endDate);
-        addAppointment(appointment);
+    /**
+     * Saves the schedule to the checkpoint and empties the journal.
+     * <p>
+     * The checkpoint is replaced atomically and remembers the last journal record it contains,
+     * so records left behind by a crash before the journal is emptied are not replayed twice.
+     *
+     * @throws IllegalStateException if the schedule is not journaling
+     */
+    public void compactJournal() throws IOException {
+        locks.exclusive(() -> {
+            if (journal == null) throw new IllegalStateException("Schedule is not journaling");
+            writeJournalCheckpoint();
+        });
     }
 
-    private void dayDistribution(String[] row, String[] header, Map<String, Object> data, LocalDate startDate, LocalDate endDate) {
-        Appointment appointment = createAppointmentFromCSVRow(row, header, data, startDate, endDate);
-        addAppointment(appointment);
+    private void writeJournalCheckpoint() throws IOException {
+        journal.sync();
+        Path checkpoint = Paths.get(checkpointPath);
+        Path temporary = Paths.get(checkpointPath + ".tmp");
+        writeCheckpoint(temporary.toString());
+        Files.move(temporary, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.reset();
     }
 
-    private void loadFromJSON(String path) throws IOException {
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(Time.class, new TimeAdapter())
-                .create();
+    /**
+     * Forces all journal records to disk.
+     */
+    public void syncJournal() throws IOException {
+        ScheduleJournal journal = this.journal;
+        if (journal != null) journal.sync();
+    }
+
+    /**
+     * Forces all journal records to disk and stops journaling.
+     */
+    public void closeJournal() throws IOException {
+        locks.exclusive(() -> {
+            if (journal == null) return;
+            try {
+                journal.close();
+            }
+            finally {
+                journal = null;
+                checkpointPath = null;
+            }
+        });
+    }
+
+    // Appends a record before its change is applied, returns 0 if the schedule is not journaling
+    private long journal(ToLongFunction<ScheduleJournal> append) {
+        ScheduleJournal journal = this.journal;
+        return (journal == null) ? 0 : append.applyAsLong(journal);
+    }
 
-        List<Appointment> appointments;
-        try (FileReader reader = new FileReader(path)) {
-            appointments = gson.fromJson(reader, new TypeToken<List<Appointment>>(){}.getType());
+    private void journaled(long sequence) {
+        journalSequence.accumulateAndGet(sequence, Math::max);
+    }
+
+    // Called after the locks of a change are released, the journal is checked again once the schedule is locked
+    private void compactJournalIfFull() {
+        if (!isJournalFull()) return;
+        try {
+            locks.exclusive(() -> {
+                if (isJournalFull()) writeJournalCheckpoint();
+            });
         }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isJournalFull() {
+        ScheduleJournal journal = this.journal;
+        return journal != null && journal.getRecords() >= config.getJournalCompactRecords();
+    }
+
+    /**
+     * Saves reserved appointments to the directory as one BIN file per room.
+     * <p>
+     * Rooms changed since the last save are tracked, so saving again to the same directory rewrites only their files
+     * and deletes the files of rooms left without appointments.
+     *
+     * @param directory - Directory to which the schedule is saved
+     */
+    public void savePartitions(String directory) throws IOException {
+        partitions.save(directory);
+    }
 
-        appointments.forEach(this::addAppointment);
+    /**
+     * Loads reserved appointments from every room file in the directory, as by {@link #addAppointments(Collection)}.
+     *
+     * @param directory - Directory from which the schedule is loaded
+     */
+    public void loadPartitions(String directory) throws IOException {
+        locks.exclusive(() -> {
+            boolean empty = reservedAppointments.size() == 0;
+            Map<String, ScheduleRoom> roomsByName = rooms.toMap();
+            List<Appointment> appointments = partitions.load(directory, roomsByName);
+            insertAppointments(appointments, groupByRoom(appointments));
+            if (empty) partitions.markClean(directory);
+        });
+        compactJournalIfFull();
+    }
+
+    /**
+     * Saves the schedule to the directory as by {@link #savePartitions(String)} and keeps saving changed rooms from a
+     * background thread. The first change schedules a save after the delay, later changes join it. A failed save is
+     * retried after the delay and reported by {@link #stopWriteBehind()} or the next {@link #savePartitions(String)}.
+     *
+     * @param directory - Directory to which the schedule is saved
+     * @param delayMillis - Delay in milliseconds between the first change and the save
+     */
+    public void startWriteBehind(String directory, long delayMillis) throws IOException {
+        partitions.startWriteBehind(directory, delayMillis);
+    }
+
+    /**
+     * Stops saving from the background thread and saves all pending changes.
+     *
+     * @throws IOException if saving the pending changes failed, or if a background save failed before
+     */
+    public void stopWriteBehind() throws IOException {
+        partitions.stopWriteBehind();
     }
 
     /**
      * Saves the schedule to a file in the specified format.
+     * <p>
+     * JSON2 is a compact JSON layout in which rooms and repeated data values are written once and referred to by
+     * index, it is loaded from .json files like JSON. BIN is a columnar binary layout loaded from .bin files.
      *
      * @param path - Path to the file to which the schedule is saved
-     * @param format - File format (e.g., JSON, CSV)
+     * @param format - File format (e.g., JSON, JSON2, BIN, CSV)
      */
     public void saveScheduleToFile(String path, String format) throws IOException {
-        if (format.equals("CSV")) ScheduleUtils.getInstance().saveToCSV(reservedAppointments, path, config);
-        else if (format.equals("JSON")) ScheduleUtils.getInstance().saveToJSON(reservedAppointments, path);
+        List<Appointment> appointments = snapshot.get().getReservedAppointments().getAppointments();
+        if (format.equals("CSV")) ScheduleUtils.getInstance().saveToCSV(appointments, path, config);
+        else if (format.equals("JSON")) ScheduleUtils.getInstance().saveToJSON(appointments, path);
+        else if (format.equals("JSON2")) ScheduleUtils.getInstance().saveToCompactJSON(appointments, path);
+        else if (format.equals("BIN")) ScheduleUtils.getInstance().saveToBinary(appointments, path);
     }
 
     /**
      * Returns the list of reserved appointments.
+     * <p>
+     * The list reads the current snapshot on every call, an iteration or a copy stays on the snapshot it started
+     * from. Indexed loops should run over a copy, as consecutive calls of size and get may read different snapshots.
      *
      * @return - List of reserved appointments
      */
     public List<Appointment> getReservedAppointments() {
-        return Collections.unmodifiableList(reservedAppointments);
+        return new SnapshotList<>(() -> snapshot.get().getReservedAppointments().getAppointments());
     }
 
     /**
      * Returns the list of free appointments.
+     * <p>
+     * Like the list of reserved appointments it reads the current snapshot on every call, indexed loops should run
+     * over a copy. In the lazy free time mode the list is computed on every call and does not follow later changes.
      *
      * @return - List of free appointments
      */
     public List<Appointment> getFreeAppointments() {
-        return Collections.unmodifiableList(freeAppointments);
+        if (isLazyFreeTime()) return Collections.unmodifiableList(selectFreeAppointments(null, null, null).collect(Collectors.toList()));
+        return new SnapshotList<>(() -> snapshot.get().getFreeAppointments().getAppointments());
     }
 
     /**
@@ -656,11 +1355,21 @@ public abstract class Schedule {
      * @return - List of rooms
      */
     public List<ScheduleRoom> getRooms() {
-        return Collections.unmodifiableList(rooms);
+        return roomList;
     }
 
     public void setConfig(Properties properties) {
+        locks.exclusive(() -> applyConfig(properties));
+    }
+
+    private void applyConfig(Properties properties) {
+        this.properties = properties;
         this.config = ScheduleUtils.getInstance().loadConfiguration(properties);
+        this.freeTimeComplement = (config.getFreeTimeMode() == FreeTimeMode.LAZY) ? new FreeTimeComplement(config, reservationIndex) : null;
+        this.occupancyCalendar = new OccupancyCalendar(config);
+        reservedAppointments.forEach(occupancyCalendar::reserve);
+        this.tokenizer = new DataTokenizer(config.getTokenizedData(), config.getTokenSeparator());
+        reservedAppointments.setTokenizer(tokenizer);
     }
 
 }
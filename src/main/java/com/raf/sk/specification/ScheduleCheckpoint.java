@@ -0,0 +1,168 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.Equipment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.FreeTime;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+import static com.raf.sk.specification.BinaryScheduleFormat.*;
+
+/**
+ * Memory-mapped checkpoint of the complete schedule state.
+ * <p>
+ * The file holds the last journal sequence included in the state, the configuration properties, the rooms with their equipment, the reserved appointments in the
+ * {@link BinaryScheduleFormat} layout and the free appointments as columns of room index, day ordinal, start and
+ * end minute and epoch day. Opening a checkpoint decodes everything but the free appointments, which stay in the
+ * mapped file until {@link #readFreeAppointments()} is called.
+ */
+final class ScheduleCheckpoint {
+
+    public static final int MAGIC = 0x534B4350;
+    public static final int VERSION = 2;
+
+    private static final int FREE_ROW_BYTES = Integer.BYTES + Byte.BYTES + 2 * Short.BYTES + Integer.BYTES;
+
+    private final long sequence;
+    private final Properties properties;
+    private final List<ScheduleRoom> rooms;
+    private final List<Appointment> reservedAppointments;
+    private final ByteBuffer freeColumns;
+    private final int freeCount;
+
+    private ScheduleCheckpoint(long sequence, Properties properties, List<ScheduleRoom> rooms, List<Appointment> reservedAppointments,
+                               ByteBuffer freeColumns, int freeCount) {
+        this.sequence = sequence;
+        this.properties = properties;
+        this.rooms = rooms;
+        this.reservedAppointments = reservedAppointments;
+        this.freeColumns = freeColumns;
+        this.freeCount = freeCount;
+    }
+
+    public static void write(String path, long sequence, Properties properties, List<ScheduleRoom> rooms,
+                             List<Appointment> reservedAppointments, List<Appointment> freeAppointments) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelOutput out = new ChannelOutput(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(sequence);
+
+            Set<String> names = properties.stringPropertyNames();
+            out.putInt(names.size());
+            for (String name : names) {
+                out.putString(name);
+                out.putString(properties.getProperty(name));
+            }
+
+            Map<String, Integer> roomIds = new HashMap<>();
+            out.putInt(rooms.size());
+            for (ScheduleRoom room : rooms) {
+                roomIds.put(room.getName(), roomIds.size());
+                out.putString(room.getName());
+                out.putInt(room.getCapacity());
+                out.putInt(room.getEquipment().size());
+                for (Equipment equipment : room.getEquipment()) {
+                    out.putString(equipment.getName());
+                    out.putInt(equipment.getAmount());
+                }
+            }
+
+            new BinaryScheduleFormat().write(reservedAppointments, out);
+
+            out.putInt(freeAppointments.size());
+            for (Appointment appointment : freeAppointments) out.putInt(roomIds.get(appointment.getScheduleRoom().getName()));
+            for (Appointment appointment : freeAppointments) out.putByte((byte) appointment.getTime().getDay().ordinal());
+            for (Appointment appointment : freeAppointments) out.putShort((short) appointment.getTime().getStartMinute());
+            for (Appointment appointment : freeAppointments) out.putShort((short) appointment.getTime().getEndMinute());
+            for (Appointment appointment : freeAppointments) out.putInt((int) appointment.getTime().getDate().toEpochDay());
+            out.flush();
+        }
+    }
+
+    /**
+     * Maps a checkpoint file and decodes everything but the free appointments.
+     *
+     * @throws IOException if the file is not a checkpoint of a supported version or is truncated
+     */
+    public static ScheduleCheckpoint open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.remaining() < 8 || in.getInt() != MAGIC) throw new IOException("Not a schedule checkpoint: " + path);
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) throw new IOException("Unsupported checkpoint version " + version);
+            long sequence = (version >= 2) ? in.getLong() : 0;
+
+            Properties properties = new Properties();
+            for (int i = in.getInt(); i > 0; i--) properties.setProperty(getString(in), getString(in));
+
+            Map<String, ScheduleRoom> roomsByName = new LinkedHashMap<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                String name = getString(in);
+                int capacity = in.getInt();
+                List<Equipment> equipment = new ArrayList<>();
+                for (int j = in.getInt(); j > 0; j--) equipment.add(new Equipment(getString(in), in.getInt()));
+                roomsByName.put(name, new ScheduleRoom(name, capacity, equipment));
+            }
+            List<ScheduleRoom> rooms = new ArrayList<>(roomsByName.values());
+
+            List<Appointment> reservedAppointments = new BinaryScheduleFormat().read(in, roomsByName);
+
+            int freeCount = in.getInt();
+            if (in.remaining() < (long) freeCount * FREE_ROW_BYTES) throw new BufferUnderflowException();
+            return new ScheduleCheckpoint(sequence, properties, rooms, reservedAppointments, in.slice(), freeCount);
+        }
+        catch (BufferUnderflowException e) {
+            throw new IOException("Truncated schedule checkpoint: " + path, e);
+        }
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Properties getProperties() {
+        return properties;
+    }
+
+    public List<ScheduleRoom> getRooms() {
+        return rooms;
+    }
+
+    public List<Appointment> getReservedAppointments() {
+        return reservedAppointments;
+    }
+
+    /**
+     * Decodes the free appointments from the mapped file.
+     *
+     * @return - Free appointments in the order they were written
+     */
+    public List<Appointment> readFreeAppointments() {
+        ByteBuffer in = freeColumns.duplicate();
+        int[] roomColumn = getInts(in, freeCount);
+        byte[] dayColumn = new byte[freeCount];
+        in.get(dayColumn);
+        short[] startMinutes = getShorts(in, freeCount);
+        short[] endMinutes = getShorts(in, freeCount);
+        int[] epochDays = getInts(in, freeCount);
+
+        Day[] days = Day.values();
+        List<Appointment> appointments = new ArrayList<>(freeCount);
+        for (int i = 0; i < freeCount; i++) {
+            FreeTime time = new FreeTime(days[dayColumn[i]], startMinutes[i], endMinutes[i], LocalDate.ofEpochDay(epochDays[i]));
+            appointments.add(new Appointment(time, rooms.get(roomColumn[i])));
+        }
+        return appointments;
+    }
+
+}
@@ -0,0 +1,376 @@
+package com.raf.sk.specification;
+
+import com.google.gson.Gson;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.Equipment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.ReservedTime;
+import com.raf.sk.specification.model.time.Time;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static com.raf.sk.specification.BinaryScheduleFormat.*;
+
+/**
+ * Append-only journal of schedule mutations.
+ * <p>
+ * Every record is framed as its length, a sequence number, the record type, the payload and a CRC32 of everything
+ * after the length, and is appended with a single write. Records are appended before their change is applied, and a
+ * change of several appointments, such as a move, a transaction or a loaded batch, is one record, so recovery
+ * replays a change either whole or not at all. The file is forced to disk after every configured number of records
+ * and on {@link #sync()}, so a crash loses at most the records written since the last force. Replay stops at the
+ * first torn or corrupt record and cuts the file there. Records may be appended from several threads.
+ */
+final class ScheduleJournal implements Closeable {
+
+    public static final int MAGIC = 0x534B4A4C;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final byte ADD_APPOINTMENT = 1, DELETE_APPOINTMENT = 2, ADD_ROOM = 3, DELETE_ROOM = 4, CHANGE_APPOINTMENTS = 5, CHANGE_DATA = 6;
+    private static final byte NO_DAY = -1, NULL_VALUE = -1;
+
+    private final FileChannel channel;
+    private final int syncRecords;
+    private final Gson gson = new Gson();
+    private long sequence;
+    private int records, unsynced;
+
+    private ScheduleJournal(FileChannel channel, int syncRecords) {
+        this.channel = channel;
+        this.syncRecords = Math.max(1, syncRecords);
+    }
+
+    /**
+     * Opens a journal file, creating it if it does not exist.
+     *
+     * @param path - Path to the journal file
+     * @param syncRecords - Number of records after which the file is forced to disk
+     * @throws IOException if the file is not a journal of a supported version
+     */
+    public static ScheduleJournal open(String path, int syncRecords) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) channel.write(header);
+                channel.force(true);
+            }
+            else {
+                ByteBuffer header = read(channel, HEADER_BYTES);
+                if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) throw new IOException("Not a schedule journal: " + path);
+                int version = header.getInt();
+                if (version != VERSION) throw new IOException("Unsupported journal version " + version);
+            }
+            return new ScheduleJournal(channel, syncRecords);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Applies all records with a sequence number above the given one to the schedule, in the order they were written.
+     * A torn or corrupt tail left by a crash is cut off.
+     *
+     * @param after - Last sequence number already contained in the schedule
+     * @param schedule - Schedule the records are applied to, it must not be journaling
+     */
+    public void replay(long after, Schedule schedule) throws IOException {
+        Map<String, ScheduleRoom> roomsByName = new HashMap<>();
+        schedule.getReservedAppointments().forEach(a -> roomsByName.putIfAbsent(a.getScheduleRoom().getName(), a.getScheduleRoom()));
+        schedule.getRooms().forEach(room -> roomsByName.put(room.getName(), room));
+
+        sequence = after;
+        ByteBuffer in = read(channel, channel.size());
+        int size = in.limit();
+        int position = HEADER_BYTES;
+        while (position + Integer.BYTES <= size) {
+            int length = in.getInt(position);
+            int end = position + Integer.BYTES + length + Integer.BYTES;
+            if (length < Long.BYTES + Byte.BYTES || length > size || end > size) break;
+
+            ByteBuffer record = in.duplicate();
+            record.limit(position + Integer.BYTES + length).position(position + Integer.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != in.getInt(end - Integer.BYTES)) break;
+
+            long recordSequence = record.getLong();
+            if (recordSequence > after) apply(record, schedule, roomsByName);
+            sequence = Math.max(sequence, recordSequence);
+            records++;
+            position = end;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            channel.force(true);
+        }
+    }
+
+    // Reads the file from the start, journals are kept short by compaction
+    private static ByteBuffer read(FileChannel channel, long bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bytes, Integer.MAX_VALUE));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // keep reading until the buffer is full or the end of the file is reached
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void apply(ByteBuffer record, Schedule schedule, Map<String, ScheduleRoom> roomsByName) {
+        byte type = record.get();
+        switch (type) {
+            case ADD_APPOINTMENT:
+                schedule.addAppointment(readAppointment(record, roomsByName));
+                break;
+            case DELETE_APPOINTMENT:
+                schedule.deleteAppointment(readAppointment(record, roomsByName));
+                break;
+            case ADD_ROOM:
+                ScheduleRoom added = readRoom(record);
+                schedule.addRoom(added);
+                roomsByName.put(added.getName(), added);
+                break;
+            case DELETE_ROOM:
+                String name = getString(record);
+                schedule.deleteRoom(roomsByName.getOrDefault(name, new ScheduleRoom(name, 0)));
+                break;
+            case CHANGE_APPOINTMENTS:
+                ScheduleTransaction transaction = schedule.transaction();
+                for (int i = record.getInt(); i > 0; i--) transaction.deleteAppointment(readAppointment(record, roomsByName));
+                for (int i = record.getInt(); i > 0; i--) transaction.addAppointment(readAppointment(record, roomsByName));
+                transaction.commit();
+                break;
+            case CHANGE_DATA:
+                Appointment appointment = readAppointment(record, roomsByName);
+                String key = getString(record);
+                byte valueType = record.get();
+                Object value = (valueType == NULL_VALUE) ? null : readValue(valueType, getString(record));
+                schedule.replayDataChange(appointment, key, value);
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    public long appendAddAppointment(Appointment appointment) {
+        return append(ADD_APPOINTMENT, out -> writeAppointment(out, appointment));
+    }
+
+    public long appendDeleteAppointment(Appointment appointment) {
+        return append(DELETE_APPOINTMENT, out -> writeAppointment(out, appointment));
+    }
+
+    /**
+     * Appends the deleted and added appointments of one change as a single record, which is replayed as a transaction
+     * deleting them before adding.
+     */
+    public long appendChanges(List<Appointment> deleted, List<Appointment> added) {
+        if (deleted.isEmpty() && added.size() == 1) return appendAddAppointment(added.get(0));
+        if (deleted.size() == 1 && added.isEmpty()) return appendDeleteAppointment(deleted.get(0));
+        return append(CHANGE_APPOINTMENTS, out -> {
+            out.writeInt(deleted.size());
+            for (Appointment appointment : deleted) writeAppointment(out, appointment);
+            out.writeInt(added.size());
+            for (Appointment appointment : added) writeAppointment(out, appointment);
+        });
+    }
+
+    /**
+     * Appends a changed value of a reserved appointment, which is replayed on the reserved appointment equal to it.
+     *
+     * @param value - New value, or null if the key was removed
+     */
+    public long appendChangeData(Appointment appointment, String key, Object value) {
+        return append(CHANGE_DATA, out -> {
+            writeAppointment(out, appointment);
+            writeString(out, key);
+            if (value == null) out.writeByte(NULL_VALUE);
+            else writeValue(out, value);
+        });
+    }
+
+    public long appendAddRoom(ScheduleRoom scheduleRoom) {
+        return append(ADD_ROOM, out -> writeRoom(out, scheduleRoom));
+    }
+
+    public long appendDeleteRoom(ScheduleRoom scheduleRoom) {
+        return append(DELETE_ROOM, out -> writeString(out, scheduleRoom.getName()));
+    }
+
+    /**
+     * Appends one record. If the record cannot be written whole or forced to disk, the file is cut back, so the change
+     * is not applied and later records are not appended after a torn one.
+     *
+     * @return - Sequence number of the record
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    private synchronized long append(byte type, Payload payload) {
+        long end = -1;
+        try {
+            end = channel.size();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeLong(sequence + 1);
+            out.writeByte(type);
+            payload.write(out);
+            out.writeInt(0);
+
+            ByteBuffer frame = ByteBuffer.wrap(bytes.toByteArray());
+            int length = frame.capacity() - 2 * Integer.BYTES;
+            frame.putInt(0, length);
+            CRC32 crc = new CRC32();
+            crc.update(frame.array(), Integer.BYTES, length);
+            frame.putInt(Integer.BYTES + length, (int) crc.getValue());
+
+            while (frame.hasRemaining()) channel.write(frame, end + frame.position());
+            if (unsynced + 1 >= syncRecords) channel.force(false);
+        }
+        catch (IOException e) {
+            if (end >= 0) {
+                try {
+                    channel.truncate(end);
+                }
+                catch (IOException truncateFailure) {
+                    e.addSuppressed(truncateFailure);
+                }
+            }
+            throw new UncheckedIOException(e);
+        }
+        unsynced = (unsynced + 1 >= syncRecords) ? 0 : unsynced + 1;
+        records++;
+        return ++sequence;
+    }
+
+    /**
+     * Forces all appended records to disk.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced == 0) return;
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    /**
+     * Removes all records after their changes have been saved to a checkpoint. Sequence numbers keep growing.
+     */
+    public synchronized void reset() throws IOException {
+        channel.truncate(HEADER_BYTES);
+        channel.force(true);
+        records = 0;
+        unsynced = 0;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return - Number of records in the journal
+     */
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            sync();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    // Encoding
+    private void writeAppointment(DataOutputStream out, Appointment appointment) throws IOException {
+        Time<LocalDate> time = appointment.getTime();
+        writeString(out, appointment.getScheduleRoom().getName());
+        out.writeByte((time.getDay() == null) ? NO_DAY : time.getDay().ordinal());
+        out.writeShort(time.getStartMinute());
+        out.writeShort(time.getEndMinute());
+        out.writeInt((int) time.getStartDate().toEpochDay());
+        out.writeInt((int) time.getEndDate().toEpochDay());
+
+        Map<String, Object> data = (appointment.getAllData() == null) ? Map.of() : appointment.getAllData();
+        out.writeInt(data.size());
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            writeString(out, entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+    }
+
+    private void writeValue(DataOutputStream out, Object value) throws IOException {
+        boolean string = value instanceof String;
+        out.writeByte(string ? STRING_VALUE : JSON_VALUE);
+        writeString(out, string ? (String) value : gson.toJson(value));
+    }
+
+    private Object readValue(byte type, String value) {
+        return (type == STRING_VALUE) ? value : gson.fromJson(value, Object.class);
+    }
+
+    private Appointment readAppointment(ByteBuffer in, Map<String, ScheduleRoom> roomsByName) {
+        ScheduleRoom scheduleRoom = roomsByName.computeIfAbsent(getString(in), name -> new ScheduleRoom(name, 0));
+        byte day = in.get();
+        int startMinute = in.getShort();
+        int endMinute = in.getShort();
+        LocalDate startDate = LocalDate.ofEpochDay(in.getInt());
+        LocalDate endDate = LocalDate.ofEpochDay(in.getInt());
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        for (int i = in.getInt(); i > 0; i--) {
+            String key = getString(in);
+            byte type = in.get();
+            data.put(key, readValue(type, getString(in)));
+        }
+        Day dayOfWeek = (day == NO_DAY) ? null : Day.values()[day];
+        return new Appointment(new ReservedTime(dayOfWeek, startMinute, endMinute, startDate, endDate), scheduleRoom, data);
+    }
+
+    private void writeRoom(DataOutputStream out, ScheduleRoom scheduleRoom) throws IOException {
+        writeString(out, scheduleRoom.getName());
+        out.writeInt(scheduleRoom.getCapacity());
+        out.writeInt(scheduleRoom.getEquipment().size());
+        for (Equipment equipment : scheduleRoom.getEquipment()) {
+            writeString(out, equipment.getName());
+            out.writeInt(equipment.getAmount());
+        }
+    }
+
+    private ScheduleRoom readRoom(ByteBuffer in) {
+        String name = getString(in);
+        int capacity = in.getInt();
+        List<Equipment> equipment = new ArrayList<>();
+        for (int i = in.getInt(); i > 0; i--) equipment.add(new Equipment(getString(in), in.getInt()));
+        return new ScheduleRoom(name, capacity, equipment);
+    }
+
+    private void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private interface Payload {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+}
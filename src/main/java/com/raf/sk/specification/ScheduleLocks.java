@@ -0,0 +1,106 @@
+package com.raf.sk.specification;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Locks of a schedule striped by room.
+ * <p>
+ * Every room has its own {@link StampedLock} which guards its partitions of the reservation index, the occupancy
+ * calendar and the free appointments. Changes of appointments take the schedule lock shared and then the locks of
+ * their rooms in name order, so bookings in different rooms proceed in parallel. Changes of the whole schedule
+ * (configuration, rooms, loading) take the schedule lock exclusively. Before the locks of a change are released its
+ * rooms, or every changed room for changes of the whole schedule, are handed to the publisher.
+ * <p>
+ * Reads of a room take the schedule lock and the lock of the room shared. They traverse the interval trees, bitmaps
+ * and maps of the room, which changes rotate and rebuild in place, so they are never run optimistically: a torn
+ * traversal may loop or overflow the stack instead of failing in a way that could be retried. Reads which need no
+ * locking go to the published snapshot instead. None of the locks is reentrant, so locked methods must not call each
+ * other.
+ */
+final class ScheduleLocks {
+
+    private final StampedLock schedule = new StampedLock();
+    private final ConcurrentMap<String, StampedLock> rooms = new ConcurrentHashMap<>();
+    private final Consumer<Collection<String>> publisher;
+
+    /**
+     * @param publisher - Called with the changed rooms at the end of every change, null stands for every changed room
+     */
+    public ScheduleLocks(Consumer<Collection<String>> publisher) {
+        this.publisher = publisher;
+    }
+
+    /**
+     * Runs a change of the whole schedule while holding the schedule lock exclusively.
+     */
+    public <E extends Exception> void exclusive(Action<E> action) throws E {
+        long stamp = schedule.writeLock();
+        try {
+            action.run();
+        }
+        finally {
+            try {
+                publisher.accept(null);
+            }
+            finally {
+                schedule.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Runs a change of the given rooms while holding their locks, rooms are locked in name order.
+     */
+    public void writeRooms(Collection<String> names, Runnable action) {
+        TreeSet<String> sorted = new TreeSet<>(names);
+        StampedLock[] locks = sorted.stream().map(this::lockOf).toArray(StampedLock[]::new);
+        long[] stamps = new long[locks.length];
+        long scheduleStamp = schedule.readLock();
+        try {
+            for (int i = 0; i < locks.length; i++) stamps[i] = locks[i].writeLock();
+            action.run();
+        }
+        finally {
+            publisher.accept(sorted);
+            for (int i = locks.length - 1; i >= 0; i--) {
+                if (stamps[i] != 0) locks[i].unlockWrite(stamps[i]);
+            }
+            schedule.unlockRead(scheduleStamp);
+        }
+    }
+
+    /**
+     * Reads the state of one room while holding its lock shared, so reads of a room only wait for its changes.
+     */
+    public <T> T readRoom(String name, Supplier<T> read) {
+        StampedLock room = lockOf(name);
+        long scheduleStamp = schedule.readLock();
+        try {
+            long roomStamp = room.readLock();
+            try {
+                return read.get();
+            }
+            finally {
+                room.unlockRead(roomStamp);
+            }
+        }
+        finally {
+            schedule.unlockRead(scheduleStamp);
+        }
+    }
+
+    private StampedLock lockOf(String name) {
+        return rooms.computeIfAbsent(name, n -> new StampedLock());
+    }
+
+    public interface Action<E extends Exception> {
+        void run() throws E;
+    }
+
+}
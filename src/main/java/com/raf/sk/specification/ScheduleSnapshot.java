@@ -0,0 +1,54 @@
+package com.raf.sk.specification;
+
+/**
+ * Immutable state of a schedule published after a change.
+ * <p>
+ * A snapshot holds the rooms and views of the reserved and free appointments. Views share every room which did not
+ * change with the previous snapshot, so publishing costs as much as the changed rooms. Readers take the current
+ * snapshot without locking and see every change either completely or not at all.
+ */
+final class ScheduleSnapshot {
+
+    static final ScheduleSnapshot EMPTY = new ScheduleSnapshot(0, RoomRegistry.EMPTY, AppointmentStore.View.EMPTY, AppointmentStore.View.EMPTY);
+
+    private final long version;
+    private final RoomRegistry rooms;
+    private final AppointmentStore.View reservedAppointments;
+    private final AppointmentStore.View freeAppointments;
+
+    private ScheduleSnapshot(long version, RoomRegistry rooms, AppointmentStore.View reservedAppointments, AppointmentStore.View freeAppointments) {
+        this.version = version;
+        this.rooms = rooms;
+        this.reservedAppointments = reservedAppointments;
+        this.freeAppointments = freeAppointments;
+    }
+
+    /**
+     * Creates the next snapshot, or returns this one if nothing changed.
+     *
+     * @param rooms - Rooms of the schedule
+     * @param reservedAppointments - View of the reserved appointments
+     * @param freeAppointments - View of the free appointments
+     */
+    public ScheduleSnapshot next(RoomRegistry rooms, AppointmentStore.View reservedAppointments, AppointmentStore.View freeAppointments) {
+        if (rooms == this.rooms && reservedAppointments == this.reservedAppointments && freeAppointments == this.freeAppointments) return this;
+        return new ScheduleSnapshot(version + 1, rooms, reservedAppointments, freeAppointments);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public RoomRegistry getRooms() {
+        return rooms;
+    }
+
+    public AppointmentStore.View getReservedAppointments() {
+        return reservedAppointments;
+    }
+
+    public AppointmentStore.View getFreeAppointments() {
+        return freeAppointments;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Appointment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changes of several appointments which are applied to a schedule all at once or not at all.
+ * <p>
+ * Adding, deleting and moving appointments on a transaction only stages the changes. On {@link #commit()} every
+ * staged change is checked against the schedule overlaid with the changes staged before it, and the changes are
+ * applied only if all of them are valid, so a failed transaction never touches the schedule. A transaction is used by
+ * one thread and finishes with its first commit or rollback.
+ *
+ * @see Schedule#transaction()
+ */
+public final class ScheduleTransaction {
+
+    private final Schedule schedule;
+    private final List<Change> changes = new ArrayList<>();
+    private boolean finished;
+
+    ScheduleTransaction(Schedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * Stages adding an appointment.
+     *
+     * @param appointment - Appointment to be added to the schedule
+     * @return - This transaction
+     */
+    public ScheduleTransaction addAppointment(Appointment appointment) {
+        return stage(null, appointment);
+    }
+
+    /**
+     * Stages deleting an appointment of the schedule or one added earlier in this transaction.
+     *
+     * @param appointment - Appointment to be deleted from the schedule
+     * @return - This transaction
+     */
+    public ScheduleTransaction deleteAppointment(Appointment appointment) {
+        return stage(appointment, null);
+    }
+
+    /**
+     * Stages moving an appointment to a new position with the same associated data.
+     *
+     * @param oldAppointment - Old appointment to be moved
+     * @param newAppointment - New appointment to which the old appointment is moved
+     * @return - This transaction
+     */
+    public ScheduleTransaction changeAppointment(Appointment oldAppointment, Appointment newAppointment) {
+        if (oldAppointment == null || newAppointment == null) return this;
+        return stage(oldAppointment, newAppointment);
+    }
+
+    private ScheduleTransaction stage(Appointment deleted, Appointment added) {
+        if (finished) throw new IllegalStateException("Transaction is already finished");
+        if (deleted != null || added != null) changes.add(new Change(deleted, added));
+        return this;
+    }
+
+    /**
+     * Applies all staged changes to the schedule. Nothing is applied if any of them fails.
+     *
+     * @throws com.raf.sk.specification.exception.AppointmentNotFoundException if a deleted or moved appointment does not exist
+     * @throws com.raf.sk.specification.exception.DifferentDataException if a moved appointment has different data
+     * @throws com.raf.sk.specification.exception.AppointmentOverlapException if an added or moved appointment overlaps
+     */
+    public void commit() {
+        if (finished) throw new IllegalStateException("Transaction is already finished");
+        finished = true;
+        schedule.commitTransaction(Collections.unmodifiableList(changes));
+    }
+
+    /**
+     * Discards all staged changes.
+     */
+    public void rollback() {
+        finished = true;
+        changes.clear();
+    }
+
+    // Staged change, a delete has no added appointment, an add has no deleted one and a move has both
+    static final class Change {
+        private final Appointment deleted;
+        private final Appointment added;
+
+        private Change(Appointment deleted, Appointment added) {
+            this.deleted = deleted;
+            this.added = added;
+        }
+
+        Appointment getDeleted() {
+            return deleted;
+        }
+
+        Appointment getAdded() {
+            return added;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.raf.sk.specification;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Unmodifiable list which reads through to the list of the current snapshot.
+ * <p>
+ * Every call reads the snapshot current at that moment, so the list follows changes of the schedule like a live view,
+ * while an iteration, a stream, a copy or a sublist stays on the snapshot it started from. Separate calls may read
+ * different snapshots: an indexed loop over {@link #size()} and {@link #get(int)} can mix two states or go out of
+ * bounds while the schedule changes, so such loops should run over a copy, for example {@link List#copyOf}.
+ */
+final class SnapshotList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final Supplier<List<T>> current;
+
+    public SnapshotList(Supplier<List<T>> current) {
+        this.current = current;
+    }
+
+    @Override
+    public T get(int index) {
+        return current.get().get(index);
+    }
+
+    @Override
+    public int size() {
+        return current.get().size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return current.get().iterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator() {
+        return current.get().listIterator();
+    }
+
+    @Override
+    public ListIterator<T> listIterator(int index) {
+        return current.get().listIterator(index);
+    }
+
+    @Override
+    public List<T> subList(int fromIndex, int toIndex) {
+        return current.get().subList(fromIndex, toIndex);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return current.get().indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return current.get().lastIndexOf(o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return current.get().contains(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        return current.get().containsAll(c);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return current.get().isEmpty();
+    }
+
+    @Override
+    public Spliterator<T> spliterator() {
+        return current.get().spliterator();
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return current.get().stream();
+    }
+
+    @Override
+    public Object[] toArray() {
+        return current.get().toArray();
+    }
+
+    @Override
+    public <A> A[] toArray(A[] array) {
+        return current.get().toArray(array);
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.raf.sk.specification;
+
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.time.Time;
+
+import java.time.LocalDate;
+import java.time.MonthDay;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Working days of the configured period, compiled once from the free days and holidays of a configuration.
+ * <p>
+ * A bit per date of the period tells whether it is a working day, so checking a date is one lookup instead of
+ * matching the free days and parsing every holiday. Dates outside the period are checked against the same rules.
+ * Every working day has the working time of the configuration as its working window.
+ */
+final class WorkingCalendar {
+
+    private final LocalDate startDate;
+    private final int days;
+    private final Set<Day> freeDays = EnumSet.noneOf(Day.class);
+    private final Set<MonthDay> holidays = new HashSet<>();
+    private final BitSet working;
+    private final List<LocalDate> workingDays;
+    private final int workStart, workEnd;
+
+    public WorkingCalendar(Configuration config) {
+        this.startDate = config.getStartDate();
+        this.days = (int) ChronoUnit.DAYS.between(config.getStartDate(), config.getEndDate()) + 1;
+        this.workStart = Time.toMinutes(config.getWorkingTime()[0]);
+        this.workEnd = Time.toMinutes(config.getWorkingTime()[1]);
+        freeDays.addAll(Arrays.asList(config.getFreeDays()));
+        for (String holiday : config.getHolidays()) {
+            if (!holiday.isBlank()) holidays.add(MonthDay.parse("--" + holiday.trim()));
+        }
+
+        this.working = new BitSet(Math.max(days, 0));
+        List<LocalDate> dates = new ArrayList<>();
+        for (int i = 0; i < days; i++) {
+            LocalDate date = startDate.plusDays(i);
+            if (isWorking(date)) {
+                working.set(i);
+                dates.add(date);
+            }
+        }
+        this.workingDays = Collections.unmodifiableList(dates);
+    }
+
+    private boolean isWorking(LocalDate date) {
+        return !freeDays.contains(ScheduleUtils.getInstance().getDayFromDate(date)) && !holidays.contains(MonthDay.from(date));
+    }
+
+    public boolean isWorkingDay(LocalDate date) {
+        long index = date.toEpochDay() - startDate.toEpochDay();
+        return (index >= 0 && index < days) ? working.get((int) index) : isWorking(date);
+    }
+
+    /**
+     * @return - Unmodifiable list of the working days of the configured period in order
+     */
+    public List<LocalDate> getWorkingDays() {
+        return workingDays;
+    }
+
+    public int getWorkStart() {
+        return workStart;
+    }
+
+    public int getWorkEnd() {
+        return workEnd;
+    }
+
+}
@@ -24,8 +24,11 @@ public class Appointment extends ScheduleObject {
         this.scheduleRoom = scheduleRoom;
     }
 
+    /**
+     * @param data - Additional data, null is taken as no data
+     */
     public Appointment(Time<LocalDate> time, ScheduleRoom scheduleRoom, Map<String, Object> data) {
-        super.data = data;
+        super.data = (data == null) ? new HashMap<>() : data;
         this.time = time;
         this.scheduleRoom = scheduleRoom;
     }
@@ -1,10 +1,15 @@
 package com.raf.sk.specification.model;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 public class ScheduleObject {
 
     protected Map<String, Object> data;
+    private transient DataListener dataListener;
 
     @SuppressWarnings("unchecked")
     public <T> T getData(String key) {
@@ -18,7 +23,8 @@ public class ScheduleObject {
 
     public <T> void putData(String key, T value) {
         if (key == null || value == null) return;
-        this.data.put(key, value);
+        Object previous = this.data.put(key, value);
+        if (dataListener != null && !value.equals(previous)) dataListener.dataChanged(this, key, previous, value);
     }
 
     // Getters and Setters
@@ -26,7 +32,39 @@ public class ScheduleObject {
         return data;
     }
 
+    /**
+     * @param data - Additional data, null is taken as no data
+     */
     public void setData(Map<String, Object> data) {
-        this.data = data;
+        Map<String, Object> previous = this.data;
+        this.data = (data == null) ? new HashMap<>() : data;
+        if (dataListener == null || previous == null) return;
+        Set<String> keys = new HashSet<>(previous.keySet());
+        keys.addAll(this.data.keySet());
+        for (String key : keys) {
+            boolean same = previous.containsKey(key) == this.data.containsKey(key) && Objects.equals(previous.get(key), this.data.get(key));
+            if (!same) dataListener.dataChanged(this, key, previous.get(key), this.data.get(key));
+        }
+    }
+
+    /**
+     * Sets the listener which is told about data changed through {@link #putData} and {@link #setData}. Schedules use
+     * it to journal the change and keep their data index current while the object is reserved, and remove it when the
+     * object is deleted. Changes made directly to the map of {@link #getAllData()} are not reported.
+     *
+     * @param dataListener - Listener, or null to remove it
+     */
+    public void setDataListener(DataListener dataListener) {
+        this.dataListener = dataListener;
+    }
+
+    public interface DataListener {
+        /**
+         * @param object - Object whose data changed
+         * @param key - Key of the changed data
+         * @param oldValue - Value before the change, or null if the key was added
+         * @param newValue - Value after the change, or null if the key was removed
+         */
+        void dataChanged(ScheduleObject object, String key, Object oldValue, Object newValue);
     }
 }
@@ -51,6 +51,11 @@ public class ScheduleRoom {
         return Objects.equals(name, that.name);
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
+
     @Override
     public String toString() {
         return "ScheduleRoom{" +
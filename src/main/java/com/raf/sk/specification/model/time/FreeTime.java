@@ -21,13 +21,20 @@ import java.util.Objects;
 public class FreeTime implements Time<LocalDate> {
 
     private Day day;
-    private String startTime, endTime;
+    private int startMinute, endMinute;
     private LocalDate date;
 
     public FreeTime(Day day, String startTime, String endTime, LocalDate startDate) {
         this.day = day;
-        this.startTime = startTime.contains(":") ? startTime : startTime + ":00";
-        this.endTime = endTime.contains(":") ? endTime : endTime + ":00";
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = Time.toMinutes(endTime);
+        this.date = startDate;
+    }
+
+    public FreeTime(Day day, int startMinute, int endMinute, LocalDate startDate) {
+        this.day = day;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
         this.date = startDate;
     }
 
@@ -43,22 +50,42 @@ public class FreeTime implements Time<LocalDate> {
 
     @Override
     public String getStartTime() {
-        return startTime;
+        return Time.toTime(startMinute);
     }
 
     @Override
     public void setStartTime(String startTime) {
-        this.startTime = startTime;
+        this.startMinute = Time.toMinutes(startTime);
     }
 
     @Override
     public String getEndTime() {
-        return endTime;
+        return Time.toTime(endMinute);
     }
 
     @Override
     public void setEndTime(String endTime) {
-        this.endTime = endTime;
+        this.endMinute = Time.toMinutes(endTime);
+    }
+
+    @Override
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    @Override
+    public void setStartMinute(int startMinute) {
+        this.startMinute = startMinute;
+    }
+
+    @Override
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    @Override
+    public void setEndMinute(int endMinute) {
+        this.endMinute = endMinute;
     }
 
     @Override
@@ -108,15 +135,15 @@ public class FreeTime implements Time<LocalDate> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         FreeTime that = (FreeTime) o;
-        return Objects.equals(startTime, that.startTime) && Objects.equals(endTime, that.endTime) && day == that.day && Objects.equals(date, that.date);
+        return startMinute == that.startMinute && endMinute == that.endMinute && day == that.day && Objects.equals(date, that.date);
     }
 
     @Override
     public String toString() {
         return "FreeTime{" +
                 "day=" + day +
-                ", startTime=" + startTime +
-                ", endTime=" + endTime +
+                ", startTime=" + getStartTime() +
+                ", endTime=" + getEndTime() +
                 ", date=" + date +
                 '}';
     }
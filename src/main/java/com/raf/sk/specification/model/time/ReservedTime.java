@@ -19,22 +19,30 @@ import java.util.Objects;
 public class ReservedTime implements Time<LocalDate> {
 
     private Day day;
-    private String startTime, endTime;
+    private int startMinute, endMinute;
     private LocalDate startDate;
     private LocalDate endDate;
 
     public ReservedTime(Day day, String startTime, String endTime, LocalDate startDate, LocalDate endDate) {
         this.day = day;
-        this.startTime = startTime.contains(":") ? startTime : startTime + ":00";
-        this.endTime = endTime.contains(":") ? endTime : endTime + ":00";
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = Time.toMinutes(endTime);
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public ReservedTime(Day day, int startMinute, int endMinute, LocalDate startDate, LocalDate endDate) {
+        this.day = day;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
         this.startDate = startDate;
         this.endDate = endDate;
     }
 
     public ReservedTime(String startTime, String endTime, LocalDate date) {
         this.day = Day.values()[date.getDayOfWeek().getValue() - 1];
-        this.startTime = startTime.contains(":") ? startTime : startTime + ":00";
-        this.endTime = endTime.contains(":") ? endTime : endTime + ":00";
+        this.startMinute = Time.toMinutes(startTime);
+        this.endMinute = Time.toMinutes(endTime);
         this.startDate = date;
         this.endDate = date;
     }
@@ -51,22 +59,42 @@ public class ReservedTime implements Time<LocalDate> {
 
     @Override
     public String getStartTime() {
-        return startTime;
+        return Time.toTime(startMinute);
     }
 
     @Override
     public void setStartTime(String startTime) {
-        this.startTime = startTime;
+        this.startMinute = Time.toMinutes(startTime);
     }
 
     @Override
     public String getEndTime() {
-        return endTime;
+        return Time.toTime(endMinute);
     }
 
     @Override
     public void setEndTime(String endTime) {
-        this.endTime = endTime;
+        this.endMinute = Time.toMinutes(endTime);
+    }
+
+    @Override
+    public int getStartMinute() {
+        return startMinute;
+    }
+
+    @Override
+    public void setStartMinute(int startMinute) {
+        this.startMinute = startMinute;
+    }
+
+    @Override
+    public int getEndMinute() {
+        return endMinute;
+    }
+
+    @Override
+    public void setEndMinute(int endMinute) {
+        this.endMinute = endMinute;
     }
 
     @Override
@@ -110,15 +138,15 @@ public class ReservedTime implements Time<LocalDate> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ReservedTime that = (ReservedTime) o;
-        return Objects.equals(startTime, that.startTime) && Objects.equals(endTime, that.endTime) && day == that.day && Objects.equals(startDate, that.startDate) && Objects.equals(endDate, that.endDate);
+        return startMinute == that.startMinute && endMinute == that.endMinute && day == that.day && Objects.equals(startDate, that.startDate) && Objects.equals(endDate, that.endDate);
     }
 
     @Override
     public String toString() {
         return "ReservedTime{" +
                 "day=" + day +
-                ", startTime=" + startTime +
-                ", endTime=" + endTime +
+                ", startTime=" + getStartTime() +
+                ", endTime=" + getEndTime() +
                 ", startDate=" + startDate +
                 ", endDate=" + endDate +
                 '}';
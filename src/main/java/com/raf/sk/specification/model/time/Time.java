@@ -4,6 +4,11 @@ import com.raf.sk.specification.model.Day;
 
 /**
  * Interface for time.
+ * <p>
+ * Start and end times are exposed both as "H:mm" strings and as minutes since midnight.
+ * Implementations are expected to keep the minutes as the primary representation,
+ * the string getters are views derived from them. Times are therefore normalized when they are set:
+ * "08:00" reads back, and is saved, as "8:00".
  *
  * @param <D> the date type
  */
@@ -33,4 +38,57 @@ public interface Time<D> {
 
     void setDate(D date);
 
+    default int getStartMinute() {
+        return toMinutes(getStartTime());
+    }
+
+    default void setStartMinute(int startMinute) {
+        setStartTime(toTime(startMinute));
+    }
+
+    default int getEndMinute() {
+        return toMinutes(getEndTime());
+    }
+
+    default void setEndMinute(int endMinute) {
+        setEndTime(toTime(endMinute));
+    }
+
+    /**
+     * Converts time in "H:mm" or "H" format to minutes since midnight without allocating. Hours and minutes have one
+     * or two digits, and the time is at most "24:00".
+     *
+     * @param time - Time to be converted
+     * @return - Minutes since midnight
+     * @throws NumberFormatException - If the time is not in the format or out of range
+     */
+    static int toMinutes(String time) {
+        int length = time.length(), colon = time.indexOf(':');
+        int hourDigits = (colon < 0) ? length : colon, minuteDigits = (colon < 0) ? 0 : length - colon - 1;
+        if (hourDigits < 1 || hourDigits > 2 || (colon >= 0 && (minuteDigits < 1 || minuteDigits > 2)))
+            throw new NumberFormatException("Invalid time: \"" + time + "\"");
+        int hours = 0, minutes = 0;
+        for (int i = 0; i < hourDigits; i++) hours = hours * 10 + digit(time, i);
+        for (int i = hourDigits + 1; i < length; i++) minutes = minutes * 10 + digit(time, i);
+        if (minutes >= 60 || hours * 60 + minutes > 24 * 60) throw new NumberFormatException("Time out of range: \"" + time + "\"");
+        return hours * 60 + minutes;
+    }
+
+    private static int digit(String time, int index) {
+        char c = time.charAt(index);
+        if (c < '0' || c > '9') throw new NumberFormatException("Invalid time: \"" + time + "\"");
+        return c - '0';
+    }
+
+    /**
+     * Converts minutes since midnight to time in "H:mm" format.
+     *
+     * @param minutes - Minutes since midnight
+     * @return - Time in "H:mm" format
+     */
+    static String toTime(int minutes) {
+        int m = minutes % 60;
+        return (minutes / 60) + (m < 10 ? ":0" : ":") + m;
+    }
+
 }
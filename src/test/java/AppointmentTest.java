@@ -26,4 +26,22 @@ public class AppointmentTest {
         Assertions.assertEquals(3, appointment.getAllData().size());
     }
 
+    @Test
+    public void time_minutes_test() {
+        ReservedTime time = new ReservedTime("8", "10:05", LocalDate.now());
+
+        Assertions.assertEquals(480, time.getStartMinute());
+        Assertions.assertEquals(605, time.getEndMinute());
+        Assertions.assertEquals("8:00", time.getStartTime());
+        Assertions.assertEquals("10:05", time.getEndTime());
+
+        time.setEndTime("11:30");
+        Assertions.assertEquals(690, time.getEndMinute());
+        Assertions.assertEquals(new ReservedTime("08:00", "11:30", time.getStartDate()), time);
+
+        for (String invalid : new String[]{"9:0x", "abc", "25:99", "9:60", "", ":30", "9:", "123:00", "-1:00"})
+            Assertions.assertThrows(NumberFormatException.class, () -> time.setStartTime(invalid), invalid);
+        Assertions.assertEquals(480, time.getStartMinute());
+    }
+
 }
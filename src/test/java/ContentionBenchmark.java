@@ -0,0 +1,109 @@
+import com.raf.sk.specification.Schedule;
+import com.raf.sk.specification.model.Appointment;
+import com.raf.sk.specification.model.ScheduleRoom;
+import com.raf.sk.specification.model.time.ReservedTime;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+
+/**
+ * Measures booking throughput of one schedule shared by several threads.
+ * <p>
+ * Every thread books single-day appointments in its own room and checks whether the room is free before every
+ * booking, so the threads only share the schedule. Throughput is printed for 1, 2, 4... threads up to the given
+ * maximum, by default the number of available processors. Run with the test classpath.
+ */
+public class ContentionBenchmark {
+
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = (args.length > 0) ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        Properties properties = getProperties();
+
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            for (int i = 0; i < WARMUP_RUNS; i++) run(properties, threads);
+            long total = 0;
+            int operations = 0;
+            for (int i = 0; i < MEASURED_RUNS; i++) {
+                Result result = run(properties, threads);
+                total += result.nanos;
+                operations += result.operations;
+            }
+            double seconds = total / 1e9;
+            System.out.printf("%d threads: %d bookings in %.1f ms, %.0f bookings/s%n",
+                    threads, operations / MEASURED_RUNS, seconds * 1000 / MEASURED_RUNS, operations / seconds);
+        }
+    }
+
+    private static Result run(Properties properties, int threads) throws Exception {
+        Schedule schedule = new ScheduleClass(properties);
+        List<List<Appointment>> work = new ArrayList<>();
+        for (int t = 0; t < threads; t++) work.add(appointments(schedule.getRooms().get(t % schedule.getRooms().size())));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (List<Appointment> appointments : work) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    for (Appointment appointment : appointments) {
+                        ReservedTime time = (ReservedTime) appointment.getTime();
+                        if (schedule.isRoomFree(appointment.getScheduleRoom(), time.getStartDate(), time.getStartTime(), time.getEndTime()))
+                            schedule.addAppointment(appointment);
+                    }
+                    return null;
+                }));
+            }
+            barrier.await();
+            long start = System.nanoTime();
+            for (Future<?> future : futures) future.get();
+            long nanos = System.nanoTime() - start;
+            return new Result(nanos, work.stream().mapToInt(List::size).sum());
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // One two-hour appointment per working day and slot in the room
+    private static List<Appointment> appointments(ScheduleRoom room) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (LocalDate date = LocalDate.of(2023, 1, 2); date.getYear() == 2023; date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) continue;
+            for (int hour = 9; hour < 21; hour += 2)
+                appointments.add(new Appointment(new ReservedTime(hour + ":00", (hour + 2) + ":00", date), room));
+        }
+        return appointments;
+    }
+
+    private static Properties getProperties() {
+        try (FileInputStream fileInputStream = new FileInputStream("src/test/resources/test.config")) {
+            Properties properties = new Properties();
+            properties.load(fileInputStream);
+            return properties;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static final class Result {
+        private final long nanos;
+        private final int operations;
+
+        private Result(long nanos, int operations) {
+            this.nanos = nanos;
+            this.operations = operations;
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+import com.raf.sk.specification.Schedule;
+import com.raf.sk.specification.model.Day;
+import com.raf.sk.specification.model.ScheduleRoom;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures CSV import throughput in rows per second.
+ * <p>
+ * Generates a CSV with one two-hour appointment per room, working day and slot of the test configuration,
+ * and loads it into a fresh schedule several times. Run with the test classpath, optionally passing the row count
+ * and the number of worker threads.
+ */
+public class CsvImportBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 10000;
+        int workers = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+        Properties properties = getProperties();
+        properties.setProperty("columns", "START_DATE,END_DATE,SUBJECT,TYPE,PROFESSOR,GROUPS");
+
+        Path csv = Files.createTempFile("schedule", ".csv");
+        try {
+            writeCSV(csv, rows, new ScheduleClass(properties).getRooms());
+
+            for (int i = 0; i < WARMUP_RUNS; i++) load(csv, properties, workers);
+            long total = 0;
+            for (int i = 0; i < MEASURED_RUNS; i++) total += load(csv, properties, workers);
+
+            double seconds = total / 1e9 / MEASURED_RUNS;
+            System.out.printf("%d rows, %d workers in %.1f ms, %.0f rows/s%n", rows, workers, seconds * 1000, rows / seconds);
+        }
+        finally {
+            Files.delete(csv);
+        }
+    }
+
+    private static long load(Path csv, Properties properties, int workers) throws IOException {
+        Schedule schedule = new ScheduleClass(properties);
+        long start = System.nanoTime();
+        schedule.loadScheduleFromFile(csv.toString(), workers);
+        return System.nanoTime() - start;
+    }
+
+    private static void writeCSV(Path csv, int rows, List<ScheduleRoom> rooms) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(csv))) {
+            writer.println("\"START_DATE\",\"END_DATE\",\"DAY\",\"TIME\",\"ROOM\",\"SUBJECT\",\"TYPE\",\"PROFESSOR\",\"GROUPS\"");
+            LocalDate date = LocalDate.of(2023, 1, 2);
+            int written = 0;
+            while (written < rows) {
+                Day day = Day.values()[date.getDayOfWeek().getValue() - 1];
+                if (day != Day.SATURDAY && day != Day.SUNDAY) {
+                    for (int hour = 9; hour < 21 && written < rows; hour += 2) {
+                        for (int r = 0; r < rooms.size() && written < rows; r++, written++) {
+                            writer.printf("\"%s\",\"%s\",\"%s\",\"%d:00-%d:00\",\"%s\",\"Subject %d\",\"Lecture\",\"Professor %d\",\"%d\"%n",
+                                    date, date, day, hour, hour + 2, rooms.get(r).getName(), written % 60, written % 40, 101 + written % 12);
+                        }
+                    }
+                }
+                date = date.plusDays(1);
+            }
+        }
+    }
+
+    private static Properties getProperties() {
+        try (FileInputStream fileInputStream = new FileInputStream("src/test/resources/test.config")) {
+            Properties properties = new Properties();
+            properties.load(fileInputStream);
+            return properties;
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
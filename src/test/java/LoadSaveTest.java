@@ -1,4 +1,5 @@
 import com.raf.sk.specification.Schedule;
+import com.raf.sk.specification.exception.AppointmentOverlapException;
 import com.raf.sk.specification.model.*;
 import com.raf.sk.specification.model.time.ReservedTime;
 import org.junit.jupiter.api.Assertions;
@@ -7,8 +8,12 @@ import org.junit.jupiter.api.Test;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
-import java.util.Properties;
+import java.util.*;
 
 public class LoadSaveTest {
 
@@ -45,6 +50,33 @@ public class LoadSaveTest {
         Assertions.assertEquals(schedule.getRoomByName("Raf04 (u)"), schedule.getReservedAppointments().get(0).getScheduleRoom());
     }
 
+    @Test
+    public void csv_parallel_import_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = source.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = source.getRoomByName("Raf01 (u)");
+        for (int i = 0; i < 50; i++) {
+            LocalDate date = LocalDate.of(2023, 1, 2).plusDays(i);
+            source.addAppointment(new Appointment(new ReservedTime("8:00", "10:00", date), (i % 2 == 0) ? r1 : r2));
+        }
+        File file = File.createTempFile("parallel", ".csv");
+        file.deleteOnExit();
+        source.saveScheduleToFile(file.getPath(), "CSV");
+
+        Schedule sequential = new ScheduleClass(getProperties());
+        sequential.loadScheduleFromFile(file.getPath());
+        Schedule parallel = new ScheduleClass(getProperties());
+        parallel.loadScheduleFromFile(file.getPath(), 4);
+
+        Assertions.assertEquals(sequential.getReservedAppointments(), parallel.getReservedAppointments());
+        Assertions.assertEquals(sequential.getFreeAppointments().size(), parallel.getFreeAppointments().size());
+
+        Schedule conflicting = new ScheduleClass(getProperties());
+        conflicting.addAppointment(new Appointment(new ReservedTime("9:00", "11:00", LocalDate.of(2023, 1, 4)), conflicting.getRoomByName("Raf04 (u)")));
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> conflicting.loadScheduleFromFile(file.getPath(), 4));
+        Assertions.assertEquals(1, conflicting.getReservedAppointments().size());
+    }
+
     @Test
     public void json_export_test() throws IOException {
         Schedule schedule = new ScheduleClass(getProperties());
@@ -76,6 +108,263 @@ public class LoadSaveTest {
 
         Assertions.assertEquals(3, schedule.getReservedAppointments().size());
         Assertions.assertEquals(schedule.getRoomByName("Raf04 (u)"), schedule.getReservedAppointments().get(0).getScheduleRoom());
+        Assertions.assertSame(schedule.getRoomByName("Raf04 (u)"), schedule.getReservedAppointments().get(2).getScheduleRoom());
+    }
+
+    @Test
+    public void json_import_without_data_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        source.addAppointment(new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), source.getRoomByName("Raf04 (u)"), null));
+        File file = File.createTempFile("nodata", ".json");
+        file.deleteOnExit();
+        source.saveScheduleToFile(file.getPath(), "JSON");
+        String json = Files.readString(file.toPath()).replace(",\"data\":{}", "");
+        Assertions.assertFalse(json.contains("\"data\""));
+        Files.writeString(file.toPath(), json);
+
+        Schedule schedule = new ScheduleClass(getProperties());
+        schedule.loadScheduleFromFile(file.getPath());
+        Assertions.assertEquals(1, schedule.getReservedAppointments().size());
+        Assertions.assertTrue(schedule.getReservedAppointments().get(0).getAllData().isEmpty());
+
+        File compact = File.createTempFile("nodata", ".json");
+        compact.deleteOnExit();
+        schedule.saveScheduleToFile(compact.getPath(), "JSON2");
+        Schedule reloaded = new ScheduleClass(getProperties());
+        reloaded.loadScheduleFromFile(compact.getPath());
+        Assertions.assertEquals(schedule.getReservedAppointments(), reloaded.getReservedAppointments());
+    }
+
+    @Test
+    public void json_batch_import_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = source.getRoomByName("Raf04 (u)");
+        for (int i = 0; i < 1200; i++) {
+            int hour = 9 + i % 12;
+            source.addAppointment(new Appointment(new ReservedTime(hour + ":00", (hour + 1) + ":00", LocalDate.of(2023, 1, 2).plusDays(i / 12)), r1));
+        }
+        File file = File.createTempFile("batches", ".json");
+        file.deleteOnExit();
+        source.saveScheduleToFile(file.getPath(), "JSON");
+
+        Schedule loaded = new ScheduleClass(getProperties());
+        loaded.loadScheduleFromFile(file.getPath());
+        Assertions.assertEquals(1200, loaded.getReservedAppointments().size());
+
+        Schedule conflicting = new ScheduleClass(getProperties());
+        LocalDate lastDate = LocalDate.of(2023, 1, 2).plusDays(99);
+        conflicting.addAppointment(new Appointment(new ReservedTime("9:30", "10:30", lastDate), conflicting.getRoomByName("Raf04 (u)")));
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> conflicting.loadScheduleFromFile(file.getPath()));
+        Assertions.assertEquals(1 + 1024, conflicting.getReservedAppointments().size());
+    }
+
+    @Test
+    public void compact_json_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = source.getRoomByName("Raf04 (u)");
+        for (int i = 0; i < 10; i++) {
+            Appointment appointment = new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2).plusDays(i)), r1);
+            appointment.putData("PROFESSOR", "Professor " + i % 3);
+            appointment.putData("GROUPS", "101, 102");
+            source.addAppointment(appointment);
+        }
+        File file = File.createTempFile("compact", ".json");
+        file.deleteOnExit();
+        source.saveScheduleToFile(file.getPath(), "JSON2");
+
+        Schedule schedule = new ScheduleClass(getProperties());
+        schedule.loadScheduleFromFile(file.getPath());
+
+        Assertions.assertEquals(source.getReservedAppointments(), schedule.getReservedAppointments());
+        Assertions.assertEquals("Professor 2", schedule.getReservedAppointments().get(5).getData("PROFESSOR"));
+        Assertions.assertEquals("101, 102", schedule.getReservedAppointments().get(9).getData("GROUPS"));
+        Assertions.assertSame(schedule.getRoomByName("Raf04 (u)"), schedule.getReservedAppointments().get(0).getScheduleRoom());
+    }
+
+    @Test
+    public void binary_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = source.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = source.getRoomByName("Raf01 (u)");
+        for (int i = 0; i < 10; i++) {
+            Appointment appointment = new Appointment(new ReservedTime(Day.MONDAY, "8:15", "10:00", LocalDate.of(2023, 1, 2).plusWeeks(i), LocalDate.of(2023, 1, 2).plusWeeks(i).plusDays(3)), (i < 5) ? r1 : r2);
+            appointment.putData("PROFESSOR", "Professor " + i % 3);
+            if (i % 2 == 0) appointment.putData("GROUPS", "101, 102");
+            if (i == 7) appointment.getAllData().put("TYPE", null);
+            source.addAppointment(appointment);
+        }
+        File file = File.createTempFile("schedule", ".bin");
+        file.deleteOnExit();
+        source.saveScheduleToFile(file.getPath(), "BIN");
+
+        Schedule schedule = new ScheduleClass(getProperties());
+        schedule.loadScheduleFromFile(file.getPath());
+
+        Assertions.assertEquals(source.getReservedAppointments(), schedule.getReservedAppointments());
+        Assertions.assertEquals("8:15", schedule.getReservedAppointments().get(3).getTime().getStartTime());
+        Assertions.assertEquals("Professor 1", schedule.getReservedAppointments().get(4).getData("PROFESSOR"));
+        Assertions.assertNull(schedule.getReservedAppointments().get(5).getData("GROUPS"));
+        Assertions.assertFalse(schedule.getReservedAppointments().get(5).getAllData().containsKey("GROUPS"));
+        Assertions.assertTrue(schedule.getReservedAppointments().get(7).getAllData().containsKey("TYPE"));
+        Assertions.assertEquals(source.getReservedAppointments().get(7).getAllData(), schedule.getReservedAppointments().get(7).getAllData());
+        Assertions.assertEquals(1, schedule.findReservedAppointmentsByData(Map.of("PROFESSOR", "Professor 1", "GROUPS", "101, 102")).size());
+        Assertions.assertEquals(1, schedule.findReservedAppointmentsByData("TYPE").size());
+        Assertions.assertSame(schedule.getRoomByName("Raf01 (u)"), schedule.getReservedAppointments().get(9).getScheduleRoom());
+    }
+
+    @Test
+    public void checkpoint_test() throws IOException {
+        Schedule source = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = source.getRoomByName("Raf04 (u)");
+        Appointment a1 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r1);
+        a1.putData("PROFESSOR", "Professor 1");
+        source.addAppointment(a1);
+        File file = File.createTempFile("schedule", ".checkpoint");
+        file.deleteOnExit();
+        source.saveCheckpoint(file.getPath());
+
+        Schedule schedule = new ScheduleClass(null);
+        schedule.loadCheckpoint(file.getPath());
+
+        Assertions.assertEquals(source.getRooms(), schedule.getRooms());
+        Assertions.assertEquals(source.getReservedAppointments(), schedule.getReservedAppointments());
+        Assertions.assertEquals("Professor 1", schedule.getReservedAppointments().get(0).getData("PROFESSOR"));
+        Assertions.assertEquals(source.getFreeAppointments(), schedule.getFreeAppointments());
+
+        ScheduleRoom r2 = schedule.getRoomByName("Raf04 (u)");
+        Assertions.assertEquals(r1.getEquipment(), r2.getEquipment());
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.addAppointment(new Appointment(new ReservedTime("11:00", "13:00", LocalDate.of(2023, 1, 10)), r2)));
+        schedule.addAppointment(new Appointment(new ReservedTime("12:00", "13:00", LocalDate.of(2023, 1, 10)), r2));
+        Assertions.assertEquals(29, schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 9)).size());
+        Assertions.assertEquals(30, schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 10)).size());
+    }
+
+    @Test
+    public void journal_recovery_test() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        String checkpoint = directory.resolve("schedule.checkpoint").toString();
+        String journal = directory.resolve("schedule.journal").toString();
+
+        Schedule schedule = new ScheduleClass(getProperties());
+        schedule.openJournal(checkpoint, journal);
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        Appointment a1 = new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), r1);
+        Appointment a2 = new Appointment(new ReservedTime(Day.THURSDAY, "10:00", "15:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 12)), r1);
+        a2.putData("PROFESSOR", "Professor 1");
+        schedule.addAppointment(a1);
+        schedule.addAppointment(a2);
+        schedule.deleteAppointment(a1);
+        schedule.addRoom(new ScheduleRoom("Raf30 (u)", 40));
+        a2.putData("GROUP", "101");
+        a2.putData("NOTE", "Lab");
+        Map<String, Object> data = new HashMap<>(a2.getAllData());
+        data.remove("NOTE");
+        a2.setData(data);
+        long journalSize = Files.size(Paths.get(journal));
+        a1.putData("GROUP", "102");
+        Assertions.assertEquals(journalSize, Files.size(Paths.get(journal)));
+        schedule.syncJournal();
+
+        Schedule recovered = new ScheduleClass(getProperties());
+        recovered.openJournal(checkpoint, journal);
+        Assertions.assertEquals(schedule.getReservedAppointments(), recovered.getReservedAppointments());
+        Assertions.assertEquals("Professor 1", recovered.getReservedAppointments().get(0).getData("PROFESSOR"));
+        Assertions.assertEquals("101", recovered.getReservedAppointments().get(0).getData("GROUP"));
+        Assertions.assertFalse(recovered.getReservedAppointments().get(0).getAllData().containsKey("NOTE"));
+        Assertions.assertEquals(1, recovered.findReservedAppointmentsByData(Map.of("GROUP", "101")).size());
+        Assertions.assertEquals(40, recovered.getRoomByName("Raf30 (u)").getCapacity());
+        Assertions.assertEquals(schedule.getFreeAppointments().size(), recovered.getFreeAppointments().size());
+        recovered.compactJournal();
+        recovered.addAppointment(a1);
+        recovered.closeJournal();
+
+        Files.write(Paths.get(journal), new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        Schedule restarted = new ScheduleClass(null);
+        restarted.openJournal(checkpoint, journal);
+        Assertions.assertEquals(2, restarted.getReservedAppointments().size());
+        Assertions.assertEquals(30, restarted.getRooms().size());
+        restarted.closeJournal();
+        schedule.closeJournal();
+    }
+
+    @Test
+    public void journal_atomic_change_test() throws IOException {
+        Path directory = Files.createTempDirectory("journal");
+        String checkpoint = directory.resolve("schedule.checkpoint").toString();
+        Path journal = directory.resolve("schedule.journal");
+
+        Schedule schedule = new ScheduleClass(getProperties());
+        schedule.openJournal(checkpoint, journal.toString());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        Appointment a1 = new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), r1);
+        schedule.addAppointment(a1);
+        schedule.changeAppointment(a1, new Appointment(new ReservedTime("12:00", "14:00", LocalDate.of(2023, 1, 2)), r1));
+        schedule.closeJournal();
+
+        Schedule recovered = new ScheduleClass(getProperties());
+        recovered.openJournal(checkpoint, journal.toString());
+        Assertions.assertEquals(schedule.getReservedAppointments(), recovered.getReservedAppointments());
+        recovered.closeJournal();
+
+        // A torn move is dropped whole, the booking stays where it was
+        byte[] bytes = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(bytes, bytes.length - 1));
+        Schedule torn = new ScheduleClass(getProperties());
+        torn.openJournal(checkpoint, journal.toString());
+        Assertions.assertEquals(List.of(a1), torn.getReservedAppointments());
+        torn.closeJournal();
+    }
+
+    @Test
+    public void partitions_test() throws IOException {
+        Path directory = Files.createTempDirectory("partitions");
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("Raf01 (u)");
+        schedule.addAppointment(new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), r1));
+        schedule.addAppointment(new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), r2));
+        schedule.savePartitions(directory.toString());
+        Assertions.assertEquals(2, directory.toFile().list().length);
+
+        Path r2File = directory.resolve("Raf01+%28u%29.bin");
+        Files.delete(r2File);
+        schedule.addAppointment(new Appointment(new ReservedTime("10:00", "12:00", LocalDate.of(2023, 1, 2)), r1));
+        schedule.savePartitions(directory.toString());
+        Assertions.assertFalse(Files.exists(r2File));
+
+        Schedule loaded = new ScheduleClass(getProperties());
+        loaded.loadPartitions(directory.toString());
+        Assertions.assertEquals(2, loaded.getReservedAppointments().size());
+
+        schedule.startWriteBehind(directory.toString(), 10);
+        schedule.addAppointment(new Appointment(new ReservedTime("10:00", "12:00", LocalDate.of(2023, 1, 2)), r2));
+        schedule.deleteRoom(r1);
+        schedule.stopWriteBehind();
+        Assertions.assertArrayEquals(new String[] {r2File.getFileName().toString()}, directory.toFile().list());
+    }
+
+    @Test
+    public void write_behind_recovery_test() throws Exception {
+        Path directory = Files.createTempDirectory("partitions");
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        schedule.startWriteBehind(directory.toString(), 10);
+
+        Path blocked = Files.createDirectory(directory.resolve("Raf04+%28u%29.bin.tmp"));
+        schedule.addAppointment(new Appointment(new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2)), r1));
+        Thread.sleep(100);
+        Assertions.assertFalse(Files.exists(directory.resolve("Raf04+%28u%29.bin")));
+
+        Files.delete(blocked);
+        for (int i = 0; i < 500 && !Files.exists(directory.resolve("Raf04+%28u%29.bin")); i++) Thread.sleep(10);
+        Assertions.assertTrue(Files.exists(directory.resolve("Raf04+%28u%29.bin")));
+
+        IOException failure = Assertions.assertThrows(IOException.class, schedule::stopWriteBehind);
+        Assertions.assertNotEquals("Background save failed", failure.getCause().getMessage());
+        Schedule loaded = new ScheduleClass(getProperties());
+        loaded.loadPartitions(directory.toString());
+        Assertions.assertEquals(schedule.getReservedAppointments(), loaded.getReservedAppointments());
+        schedule.savePartitions(directory.toString());
     }
 
     private Properties getProperties() {
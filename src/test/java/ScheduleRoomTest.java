@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 
 public class ScheduleRoomTest {
 
@@ -20,4 +21,13 @@ public class ScheduleRoomTest {
         Assertions.assertEquals(equipmentList, room.getEquipment());
     }
 
+    @Test
+    public void hash_test() {
+        ScheduleRoom room = new ScheduleRoom("RAF 20", 40);
+        ScheduleRoom sameName = new ScheduleRoom("RAF 20", 0);
+
+        Assertions.assertEquals(room.hashCode(), sameName.hashCode());
+        Assertions.assertTrue(Set.of(room).contains(sameName));
+    }
+
 }
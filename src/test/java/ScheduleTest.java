@@ -1,19 +1,23 @@
+import com.raf.sk.specification.RoomRequirements;
 import com.raf.sk.specification.Schedule;
+import com.raf.sk.specification.ScheduleTransaction;
 import com.raf.sk.specification.exception.AppointmentNotFoundException;
 import com.raf.sk.specification.exception.AppointmentOverlapException;
 import com.raf.sk.specification.exception.DifferentDataException;
 import com.raf.sk.specification.model.*;
+import com.raf.sk.specification.model.time.FreeTime;
 import com.raf.sk.specification.model.time.ReservedTime;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Properties;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 public class ScheduleTest {
 
@@ -62,7 +66,7 @@ public class ScheduleTest {
         ReservedTime t2 = new ReservedTime(Day.MONDAY, "8:00", "10:10", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 13));
         ReservedTime t3 = new ReservedTime(Day.THURSDAY, "10:00", "15:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 12));
 
-        ReservedTime t4 = new ReservedTime(Day.MONDAY, "10:00", "12:00", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 4));
+        ReservedTime t4 = new ReservedTime(Day.MONDAY, "10:00", "12:00", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 9));
         ReservedTime t5 = new ReservedTime(Day.MONDAY, "9:00", "13:00", LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 8));
 
         ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
@@ -81,6 +85,52 @@ public class ScheduleTest {
         Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.addAppointment(a5));
     }
 
+    @Test
+    public void add_appointment_room_isolation_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+
+        ReservedTime t1 = new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 3, 28));
+        ReservedTime t2 = new ReservedTime(Day.TUESDAY, "11:00", "13:00", LocalDate.of(2023, 3, 28), LocalDate.of(2023, 6, 27));
+
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("Raf05 (u)");
+
+        Appointment a1 = new Appointment(t1, r1);
+        Appointment a2 = new Appointment(t2, r2);
+        Appointment a3 = new Appointment(t2, r1);
+
+        schedule.addAppointment(a1);
+        schedule.addAppointment(a2);
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.addAppointment(a3));
+
+        schedule.deleteAppointment(a1);
+        schedule.addAppointment(a3);
+        Assertions.assertEquals(2, schedule.getReservedAppointments().size());
+    }
+
+    @Test
+    public void add_appointments_bulk_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+
+        ReservedTime t1 = new ReservedTime("8:35", "10:00", LocalDate.of(2023, 1, 2));
+        ReservedTime t2 = new ReservedTime(Day.THURSDAY, "8:35", "10:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 13));
+        ReservedTime t3 = new ReservedTime(Day.THURSDAY, "10:00", "15:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 12));
+        ReservedTime t4 = new ReservedTime(Day.THURSDAY, "19:00", "21:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 10));
+        ReservedTime t5 = new ReservedTime(Day.THURSDAY, "12:00", "13:00", LocalDate.of(2023, 12, 5), LocalDate.of(2023, 12, 8));
+        ReservedTime t6 = new ReservedTime(Day.THURSDAY, "14:00", "16:00", LocalDate.of(2023, 1, 12), LocalDate.of(2023, 1, 26));
+
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+
+        List<Appointment> appointments = List.of(new Appointment(t1, r1), new Appointment(t2, r1), new Appointment(t3, r1), new Appointment(t4, r1), new Appointment(t5, r1));
+
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.addAppointments(List.of(appointments.get(2), new Appointment(t6, r1))));
+        Assertions.assertTrue(schedule.getReservedAppointments().isEmpty());
+
+        schedule.addAppointments(appointments);
+        Assertions.assertEquals(5, schedule.getReservedAppointments().size());
+        Assertions.assertEquals(7340, schedule.getFreeAppointments().size());
+    }
+
     @Test
     public void change_appointment_test() {
         Schedule schedule = new ScheduleClass(getProperties());
@@ -88,7 +138,7 @@ public class ScheduleTest {
         ReservedTime t1 = new ReservedTime("8:00", "10:00", LocalDate.of(2023, 1, 2));
         ReservedTime t2 = new ReservedTime(Day.MONDAY, "8:00", "10:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 13));
         ReservedTime t3 = new ReservedTime(Day.THURSDAY, "10:00", "15:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 12));
-        ReservedTime t4 = new ReservedTime(Day.MONDAY, "9:00", "12:00", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 4));
+        ReservedTime t4 = new ReservedTime(Day.MONDAY, "9:00", "12:00", LocalDate.of(2023, 1, 1), LocalDate.of(2023, 1, 9));
         ReservedTime t5 = new ReservedTime(Day.WEDNESDAY, "12:00", "13:00", LocalDate.of(2023, 12, 5), LocalDate.of(2023, 12, 8));
 
         ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
@@ -115,6 +165,51 @@ public class ScheduleTest {
         Assertions.assertEquals(3, reservedAppointments.size());
     }
 
+    @Test
+    public void transaction_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("CET");
+
+        Appointment a1 = new Appointment(new ReservedTime(Day.MONDAY, "8:00", "10:00", LocalDate.of(2023, 1, 2), LocalDate.of(2023, 6, 26)), r1);
+        Appointment a2 = new Appointment(new ReservedTime(Day.MONDAY, "8:00", "10:00", LocalDate.of(2023, 1, 2), LocalDate.of(2023, 6, 26)), r2);
+        Appointment a3 = new Appointment(new ReservedTime("12:00", "14:00", LocalDate.of(2023, 1, 4)), r1);
+        schedule.addAppointments(List.of(a1, a2, a3));
+        int freeAppointmentsSize = schedule.getFreeAppointments().size();
+        long version = schedule.getVersion();
+
+        Appointment moved1 = new Appointment(a1.getTime(), r2);
+        Appointment moved2 = new Appointment(a2.getTime(), r1);
+        Appointment overlapping = new Appointment(new ReservedTime("13:00", "15:00", LocalDate.of(2023, 1, 4)), r1);
+
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.transaction()
+                .changeAppointment(a1, moved1)
+                .changeAppointment(a2, moved2)
+                .addAppointment(overlapping)
+                .commit());
+        Assertions.assertThrows(AppointmentNotFoundException.class, () -> schedule.transaction()
+                .deleteAppointment(a3)
+                .deleteAppointment(a3)
+                .commit());
+        Assertions.assertEquals(version, schedule.getVersion());
+        Assertions.assertEquals(freeAppointmentsSize, schedule.getFreeAppointments().size());
+
+        ScheduleTransaction discarded = schedule.transaction().deleteAppointment(a3);
+        discarded.rollback();
+        Assertions.assertThrows(IllegalStateException.class, discarded::commit);
+
+        schedule.transaction()
+                .changeAppointment(a1, moved1)
+                .changeAppointment(a2, moved2)
+                .deleteAppointment(a3)
+                .addAppointment(overlapping)
+                .commit();
+
+        Assertions.assertEquals(List.of(a1.getTime()), schedule.findReservedAppointmentsByRoom(r2).stream().map(Appointment::getTime).collect(Collectors.toList()));
+        Assertions.assertEquals(List.of(moved2, overlapping), schedule.findReservedAppointmentsByRoom(r1));
+        Assertions.assertEquals(freeAppointmentsSize, schedule.getFreeAppointments().size());
+    }
+
     @Test
     public void free_appointment_test(){
         Schedule schedule = new ScheduleClass(getProperties());
@@ -230,6 +325,318 @@ public class ScheduleTest {
         Assertions.assertEquals(256, appointmentsByRoom.size());
     }
 
+    @Test
+    public void query_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("CET");
+
+        Appointment a1 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r1);
+        Appointment a2 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "13:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r2);
+        Appointment a3 = new Appointment(new ReservedTime(Day.WEDNESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 4), LocalDate.of(2023, 1, 25)), r1);
+        a1.putData("PROFESSOR", "Petrovic");
+        a2.putData("PROFESSOR", "Petrovic");
+        a3.putData("PROFESSOR", "Jovanovic");
+        schedule.addAppointments(List.of(a1, a2, a3));
+
+        Assertions.assertEquals(List.of(a1), schedule.queryReservedAppointments()
+                .room(r1)
+                .between(LocalDate.of(2023, 1, 1), LocalDate.of(2023, 2, 1))
+                .during("10:00", "11:00")
+                .data("PROFESSOR", "Petrovic")
+                .list());
+        Assertions.assertEquals(List.of(a1, a2), schedule.queryReservedAppointments().day(Day.TUESDAY).keys("PROFESSOR").list());
+        Assertions.assertEquals(List.of(a2), schedule.queryReservedAppointments().lasting("11:00", "2:00").list());
+        Assertions.assertTrue(schedule.queryReservedAppointments().date(LocalDate.of(2023, 1, 4)).room(r2).list().isEmpty());
+
+        List<Appointment> freeAppointments = schedule.queryFreeAppointments()
+                .room(r1)
+                .between(LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 5))
+                .during("12:00", "21:00")
+                .list();
+        List<Appointment> expected = schedule.findFreeAppointmentsByDateTime(LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 5), "12:00", "21:00").stream()
+                .filter(a -> a.getScheduleRoom().equals(r1))
+                .collect(Collectors.toList());
+        Assertions.assertEquals(2, freeAppointments.size());
+        Assertions.assertEquals(expected, freeAppointments);
+    }
+
+    @Test
+    public void recurrence_overlap_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+
+        Appointment a1 = new Appointment(new ReservedTime(Day.MONDAY, "10:00", "12:00", LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 16)), r1);
+        schedule.addAppointment(a1);
+
+        // the date ranges only touch the range of a1 from either side
+        Appointment a2 = new Appointment(new ReservedTime(Day.MONDAY, "10:00", "12:00", LocalDate.of(2023, 1, 17), LocalDate.of(2023, 2, 6)), r1);
+        Appointment a3 = new Appointment(new ReservedTime(Day.MONDAY, "11:00", "13:00", LocalDate.of(2022, 12, 27), LocalDate.of(2023, 1, 1)), r1);
+        schedule.addAppointment(a2);
+        schedule.addAppointment(a3);
+        Assertions.assertEquals(3, schedule.getReservedAppointments().size());
+
+        // the date range lies within the range of a1 but holds no Monday, so the two never meet
+        Appointment a5 = new Appointment(new ReservedTime(Day.MONDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 4)), r1);
+        schedule.addAppointment(a5);
+        Assertions.assertEquals(4, schedule.getReservedAppointments().size());
+
+        Appointment a4 = new Appointment(new ReservedTime(Day.MONDAY, "11:00", "13:00", LocalDate.of(2023, 1, 10), LocalDate.of(2023, 1, 16)), r1);
+        Assertions.assertThrows(AppointmentOverlapException.class, () -> schedule.addAppointment(a4));
+        Assertions.assertFalse(schedule.isRoomFree(r1, LocalDate.of(2023, 1, 16), "11:00", "12:00"));
+        Assertions.assertTrue(schedule.isRoomFree(r1, LocalDate.of(2023, 1, 17), "11:00", "12:00"));
+    }
+
+    @Test
+    public void find_rooms_for_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom r1 = new ScheduleRoom("RAF20", 80, new ArrayList<>(List.of(new Equipment("PC", 30))));
+        ScheduleRoom r2 = new ScheduleRoom("RAF21", 60, new ArrayList<>(List.of(new Equipment("PC", 40), new Equipment("Projector", 1))));
+        ScheduleRoom r3 = new ScheduleRoom("RAF22", 60);
+        schedule.addRoom(r1);
+        schedule.addRoom(r2);
+        schedule.addRoom(r3);
+
+        RoomRequirements requirements = new RoomRequirements().capacity(60).equipment("PC", 30);
+        ReservedTime semester = new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 2, 1), LocalDate.of(2023, 6, 1));
+        Assertions.assertEquals(List.of(r2, r1), schedule.findRoomsFor(requirements, semester));
+        Assertions.assertEquals(List.of(r2), schedule.findRoomsFor(new RoomRequirements().equipment("Projector", 1), semester));
+        Assertions.assertEquals(List.of(r2, r3, r1), schedule.findRoomsFor(new RoomRequirements().capacity(60), semester));
+
+        schedule.addAppointment(new Appointment(new ReservedTime(Day.TUESDAY, "11:00", "13:00", LocalDate.of(2023, 5, 30), LocalDate.of(2023, 5, 30)), r2));
+        Assertions.assertEquals(List.of(r1), schedule.findRoomsFor(requirements, semester));
+        ReservedTime wednesdays = new ReservedTime(Day.WEDNESDAY, "10:00", "12:00", LocalDate.of(2023, 2, 1), LocalDate.of(2023, 6, 1));
+        Assertions.assertEquals(List.of(r2, r1), schedule.findRoomsFor(requirements, wednesdays));
+    }
+
+    @Test
+    public void free_slots_test() {
+        Properties properties = getProperties();
+        properties.setProperty("tokenizedData", "GROUPS");
+        Schedule schedule = new ScheduleClass(properties);
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("CET");
+        ScheduleRoom r3 = schedule.getRoomByName("Kolarac1");
+
+        Appointment a1 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r1);
+        Appointment a2 = new Appointment(new ReservedTime("13:00", "14:00", LocalDate.of(2023, 1, 3)), r2);
+        Appointment a3 = new Appointment(new ReservedTime("15:00", "17:00", LocalDate.of(2023, 1, 3)), r3);
+        Appointment a4 = new Appointment(new ReservedTime("9:00", "12:00", LocalDate.of(2023, 1, 4)), r3);
+        a3.putData("PROFESSOR", "Petrovic");
+        a4.putData("GROUPS", "101,102");
+        schedule.addAppointments(List.of(a1, a2, a3, a4));
+
+        LocalDate tuesday = LocalDate.of(2023, 1, 3), wednesday = LocalDate.of(2023, 1, 4);
+        List<FreeTime> slots = schedule.queryFreeSlots().room(r1).room(r2).data("PROFESSOR", "Petrovic").dates(tuesday, tuesday).list();
+        Assertions.assertEquals(List.of(new FreeTime(Day.TUESDAY, "9:00", "10:00", tuesday), new FreeTime(Day.TUESDAY, "12:00", "13:00", tuesday),
+                new FreeTime(Day.TUESDAY, "14:00", "15:00", tuesday), new FreeTime(Day.TUESDAY, "17:00", "21:00", tuesday)), slots);
+
+        slots = schedule.queryFreeSlots().room(r1).room(r2).data("PROFESSOR", "Petrovic").token("GROUPS", "102")
+                .dates(tuesday, LocalDate.of(2023, 1, 31)).lasting("2:00").limit(2).list();
+        Assertions.assertEquals(List.of(new FreeTime(Day.TUESDAY, "17:00", "21:00", tuesday), new FreeTime(Day.WEDNESDAY, "12:00", "21:00", wednesday)), slots);
+
+        slots = schedule.queryFreeSlots().room(r1).dates(tuesday, wednesday).during("10:00", "14:00").list();
+        Assertions.assertEquals(List.of(new FreeTime(Day.TUESDAY, "12:00", "14:00", tuesday), new FreeTime(Day.WEDNESDAY, "10:00", "14:00", wednesday)), slots);
+
+        slots = schedule.queryFreeSlots().room(r1).dates(wednesday, wednesday).during("7:00", "23:00").list();
+        Assertions.assertEquals(List.of(new FreeTime(Day.WEDNESDAY, "9:00", "21:00", wednesday)), slots);
+        Assertions.assertTrue(schedule.queryFreeSlots().room(r1).dates(wednesday, wednesday).during("6:00", "8:00").list().isEmpty());
+
+        // a1 started before the searched dates and ends within them
+        slots = schedule.queryFreeSlots().room(r1).dates(LocalDate.of(2023, 1, 10), LocalDate.of(2023, 2, 7)).during("10:00", "11:00").list();
+        Assertions.assertEquals(List.of(new FreeTime(Day.TUESDAY, "10:00", "11:00", LocalDate.of(2023, 2, 7))),
+                slots.stream().filter(slot -> slot.getDay() == Day.TUESDAY).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void data_index_test() {
+        Properties properties = getProperties();
+        properties.setProperty("tokenizedData", "GROUPS");
+        Schedule schedule = new ScheduleClass(properties);
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        ScheduleRoom r2 = schedule.getRoomByName("CET");
+
+        Appointment a1 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r1);
+        Appointment a2 = new Appointment(new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31)), r2);
+        Appointment a3 = new Appointment(new ReservedTime(Day.WEDNESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 4), LocalDate.of(2023, 1, 25)), r1);
+        a1.putData("GROUPS", "101, 102");
+        a2.putData("GROUPS", "102,103");
+        schedule.addAppointments(List.of(a1, a2, a3));
+
+        Assertions.assertEquals(List.of(a1, a2), schedule.queryReservedAppointments().token("GROUPS", "102").list());
+        Assertions.assertEquals(List.of(a2), schedule.queryReservedAppointments().token("GROUPS", "102").room(r2).list());
+        Assertions.assertEquals(List.of(a1), schedule.queryReservedAppointments().token("GROUPS", "101").token("GROUPS", "102").list());
+        Assertions.assertEquals(List.of(a2), schedule.queryReservedAppointments().data("GROUPS", "102,103").list());
+
+        a3.putData("GROUPS", "103");
+        a2.putData("GROUPS", "104");
+        Assertions.assertEquals(List.of(a3), schedule.queryReservedAppointments().token("GROUPS", "103").list());
+        Assertions.assertEquals(List.of(a2), schedule.findReservedAppointmentsByData(Map.of("GROUPS", "104")));
+        Assertions.assertEquals(List.of(a1, a2, a3), schedule.findReservedAppointmentsByData("GROUPS"));
+
+        schedule.deleteAppointment(a1);
+        Assertions.assertTrue(schedule.queryReservedAppointments().token("GROUPS", "101").list().isEmpty());
+    }
+
+    @Test
+    public void lazy_free_appointments_test() {
+        Properties properties = getProperties();
+        properties.setProperty("freeTimeMode", "LAZY");
+        Schedule schedule = new ScheduleClass(properties);
+
+        Assertions.assertEquals(7337, schedule.getFreeAppointments().size());
+
+        ReservedTime t1 = new ReservedTime(Day.TUESDAY, "10:00", "12:00", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31));
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        Appointment a1 = new Appointment(t1, r1);
+
+        schedule.addAppointment(a1);
+        Assertions.assertEquals(30, schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 3)).size());
+        Assertions.assertEquals(29, schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 4)).size());
+        Assertions.assertEquals(1, schedule.findFreeAppointmentsByDateTime(LocalDate.of(2023, 1, 2), LocalDate.of(2023, 1, 4), "12:00", "21:00").stream()
+                .filter(a -> a.getScheduleRoom().equals(r1))
+                .count());
+
+        schedule.deleteAppointment(a1);
+        Assertions.assertEquals(29, schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 3)).size());
+    }
+
+    @Test
+    public void free_rooms_test() {
+        Schedule schedule = new ScheduleClass(getProperties());
+
+        ReservedTime t1 = new ReservedTime(Day.TUESDAY, "10:10", "11:50", LocalDate.of(2023, 1, 3), LocalDate.of(2023, 1, 31));
+        ScheduleRoom r1 = schedule.getRoomByName("Raf04 (u)");
+        Appointment a1 = new Appointment(t1, r1);
+
+        schedule.addAppointment(a1);
+        Assertions.assertFalse(schedule.isRoomFree(r1, LocalDate.of(2023, 1, 10), "11:00", "12:00"));
+        Assertions.assertTrue(schedule.isRoomFree(r1, LocalDate.of(2023, 1, 10), "11:50", "12:30"));
+        Assertions.assertTrue(schedule.isRoomFree(r1, LocalDate.of(2023, 1, 11), "10:00", "12:00"));
+        Assertions.assertEquals(28, schedule.findFreeRooms(LocalDate.of(2023, 1, 17), "9:00", "10:15").size());
+
+        schedule.deleteAppointment(a1);
+        Assertions.assertEquals(29, schedule.findFreeRooms(LocalDate.of(2023, 1, 17), "9:00", "10:15").size());
+    }
+
+    @Test
+    public void concurrent_booking_test() throws Exception {
+        Schedule schedule = new ScheduleClass(getProperties());
+        Schedule sequential = new ScheduleClass(getProperties());
+        List<ScheduleRoom> rooms = schedule.getRooms().subList(0, 8);
+        ScheduleRoom contested = schedule.getRoomByName("CET");
+
+        ExecutorService executor = Executors.newFixedThreadPool(rooms.size());
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger contestedBookings = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (ScheduleRoom room : rooms) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (Appointment appointment : weeklyAppointments(room)) {
+                    schedule.addAppointment(appointment);
+                    schedule.isRoomFree(room, LocalDate.of(2023, 1, 9), "9:00", "10:00");
+                }
+                try {
+                    String end = (13 + rooms.indexOf(room)) + ":00";
+                    schedule.addAppointment(new Appointment(new ReservedTime("12:00", end, LocalDate.of(2023, 3, 1)), contested));
+                    contestedBookings.incrementAndGet();
+                }
+                catch (AppointmentOverlapException e) {
+                    // another thread booked the same room first
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        for (ScheduleRoom room : rooms) sequential.addAppointments(weeklyAppointments(sequential.getRoomByName(room.getName())));
+        Appointment winner = schedule.findReservedAppointmentsByRoom(contested).get(0);
+        sequential.addAppointment(new Appointment(winner.getTime(), sequential.getRoomByName("CET")));
+
+        Assertions.assertEquals(1, contestedBookings.get());
+        Assertions.assertEquals(rooms.size() * 6 + 1, schedule.getReservedAppointments().size());
+        Assertions.assertEquals(sequential.getFreeAppointments().size(), schedule.getFreeAppointments().size());
+        Assertions.assertEquals(sequential.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 9)).size(), schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 9)).size());
+    }
+
+    @Test
+    public void concurrent_booking_after_checkpoint_test() throws Exception {
+        Schedule source = new ScheduleClass(getProperties());
+        File file = File.createTempFile("schedule", ".checkpoint");
+        file.deleteOnExit();
+        source.saveCheckpoint(file.getPath());
+
+        Schedule schedule = new ScheduleClass(null);
+        schedule.loadCheckpoint(file.getPath());
+        Schedule sequential = new ScheduleClass(getProperties());
+        List<ScheduleRoom> rooms = schedule.getRooms().subList(0, 8);
+
+        ExecutorService executor = Executors.newFixedThreadPool(rooms.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (ScheduleRoom room : rooms) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (Appointment appointment : weeklyAppointments(room)) {
+                    schedule.addAppointment(appointment);
+                    schedule.findFreeAppointmentsByDate(LocalDate.of(2023, 1, 9));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) future.get();
+        executor.shutdown();
+
+        for (ScheduleRoom room : rooms) sequential.addAppointments(weeklyAppointments(sequential.getRoomByName(room.getName())));
+
+        Assertions.assertEquals(rooms.size() * 6, schedule.getReservedAppointments().size());
+        Assertions.assertEquals(sequential.getFreeAppointments().size(), schedule.getFreeAppointments().size());
+        for (ScheduleRoom room : schedule.getRooms()) {
+            Assertions.assertEquals(sequential.findFreeAppointmentsByRoom(sequential.getRoomByName(room.getName())).size(), schedule.findFreeAppointmentsByRoom(room).size());
+        }
+    }
+
+    @Test
+    public void snapshot_read_test() throws Exception {
+        Schedule schedule = new ScheduleClass(getProperties());
+        ScheduleRoom room = schedule.getRoomByName("CET");
+        List<Appointment> reservedAppointments = schedule.getReservedAppointments();
+        long version = schedule.getVersion();
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> weeklyAppointments(room).forEach(schedule::addAppointment));
+        long seenVersion = version;
+        long seenReserved = 0;
+        while (!writer.isDone()) {
+            long currentVersion = schedule.getVersion();
+            List<Appointment> reserved = List.copyOf(reservedAppointments);
+            Assertions.assertTrue(currentVersion >= seenVersion);
+            Assertions.assertTrue(reserved.size() >= seenReserved);
+            for (int i = 0; i < reserved.size(); i++) Assertions.assertEquals(room, reserved.get(i).getScheduleRoom());
+            Assertions.assertTrue(schedule.findReservedAppointmentsByRoom(room).size() >= reserved.size());
+            seenVersion = currentVersion;
+            seenReserved = reserved.size();
+        }
+        writer.get();
+        executor.shutdown();
+
+        Assertions.assertEquals(6, reservedAppointments.size());
+        Assertions.assertEquals(version + 6, schedule.getVersion());
+    }
+
+    private List<Appointment> weeklyAppointments(ScheduleRoom room) {
+        List<Appointment> appointments = new ArrayList<>();
+        for (int hour = 9; hour < 21; hour += 2) {
+            ReservedTime time = new ReservedTime(Day.MONDAY, hour + ":00", (hour + 2) + ":00", LocalDate.of(2023, 1, 2), LocalDate.of(2023, 12, 25));
+            appointments.add(new Appointment(time, room));
+        }
+        return appointments;
+    }
+
     private Properties getProperties() {
         try (FileInputStream fileInputStream = new FileInputStream("src/test/resources/test.config")) {
             Properties properties = new Properties();